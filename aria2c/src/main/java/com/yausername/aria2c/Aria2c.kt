@@ -3,6 +3,7 @@ package com.yausername.aria2c
 import android.content.Context
 import com.yausername.youtubedl_android.YoutubeDLException
 import com.yausername.youtubedl_common.SharedPrefsHelper
+import com.yausername.youtubedl_common.utils.SharedLibraryStore
 import com.yausername.youtubedl_common.utils.ZipUtils
 import org.apache.commons.io.FileUtils
 import java.io.File
@@ -34,7 +35,9 @@ object Aria2c {
             FileUtils.deleteQuietly(aria2cDir)
             aria2cDir.mkdirs()
             try {
-                ZipUtils.unzip(aria2cLib, aria2cDir)
+                val store = SharedLibraryStore(aria2cDir.parentFile!!)
+                ZipUtils.extract(aria2cLib, aria2cDir, store = store)
+                store.linkSearchDirectory()
             } catch (e: Exception) {
                 FileUtils.deleteQuietly(aria2cDir)
                 throw YoutubeDLException("failed to initialize", e)
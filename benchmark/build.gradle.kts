@@ -0,0 +1,40 @@
+plugins {
+    id("com.android.library")
+    id("org.jetbrains.kotlin.android")
+}
+
+android {
+    namespace = "com.yausername.benchmark"
+    compileSdk = 34
+
+    defaultConfig {
+        minSdk = 24
+    }
+
+    testOptions {
+        unitTests {
+            isIncludeAndroidResources = true
+            all {
+                it.systemProperty(
+                    "benchmark.outputDir",
+                    layout.buildDirectory.dir("benchmark-results").get().asFile.absolutePath
+                )
+                it.systemProperty("benchmark.iterations", System.getenv("BENCHMARK_ITERATIONS") ?: "5")
+                it.systemProperty("benchmark.python", System.getenv("BENCHMARK_PYTHON") ?: "")
+                it.systemProperty("benchmark.baselineDir", System.getenv("BENCHMARK_BASELINE_DIR") ?: "")
+            }
+        }
+    }
+}
+
+dependencies {
+    testImplementation(project(":common"))
+    testImplementation(project(":library"))
+    testImplementation(project(":ffmpeg"))
+    testImplementation(project(":aria2c"))
+
+    testImplementation("junit:junit:${rootProject.extra["junitVer"]}")
+    testImplementation("org.robolectric:robolectric:${rootProject.extra["robolectricVer"]}")
+    testImplementation("androidx.test:core:${rootProject.extra["androidxTestCoreVer"]}")
+    testImplementation("commons-io:commons-io:${rootProject.extra["commonsIoVer"]}")
+}
@@ -0,0 +1,52 @@
+package com.yausername.benchmark
+
+import com.yausername.youtubedl_common.utils.PackageArchive
+import com.yausername.youtubedl_common.utils.ZipUtils
+import org.apache.commons.io.FileUtils
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+
+class ArchiveBenchmark {
+    @get:Rule
+    val temp = TemporaryFolder()
+
+    @Test
+    fun extraction() {
+        val zip = temp.newFile("runtime.zip")
+        BenchmarkEnvironment.writeZip(zip, "usr/lib/python3.11", 1500, 32 * 1024)
+        val archive = temp.newFile("runtime.pkg")
+        PackageArchive.repack(zip, archive)
+        val target = File(temp.root, "extracted")
+        val reset: () -> Unit = {
+            FileUtils.deleteQuietly(target)
+            target.mkdirs()
+        }
+
+        val report = BenchmarkReport("archive")
+            .environment("cores", Runtime.getRuntime().availableProcessors())
+        val zipSamples = report.measure("extract.zip", before = reset) {
+            ZipUtils.unzip(zip, target)
+        }
+        val rawBytes = FileUtils.sizeOfDirectory(target)
+        val archiveSamples = report.measure("extract.package", before = reset) {
+            PackageArchive.extract(archive, target)
+        }
+        report.measure("extract.package.single_thread", before = reset) {
+            PackageArchive.extract(archive, target, 1)
+        }
+        report.recordValues("throughput.zip", throughput(rawBytes, zipSamples), "MiB/s")
+        report.recordValues("throughput.package", throughput(rawBytes, archiveSamples), "MiB/s")
+        report.recordValues("size.raw", listOf(rawBytes.toDouble()), "bytes")
+        report.recordValues("size.zip", listOf(zip.length().toDouble()), "bytes")
+        report.recordValues("size.package", listOf(archive.length().toDouble()), "bytes")
+
+        report.write()
+        report.assertNoRegression(1.5, "extract.zip", "extract.package", "extract.package.single_thread")
+    }
+
+    private fun throughput(bytes: Long, samplesNanos: List<Long>): List<Double> {
+        return samplesNanos.map { bytes / (1024.0 * 1024.0) / (it / 1_000_000_000.0) }
+    }
+}
@@ -0,0 +1,85 @@
+package com.yausername.benchmark
+
+import android.content.Context
+import androidx.test.core.app.ApplicationProvider
+import com.yausername.youtubedl_android.YoutubeDL
+import com.yausername.youtubedl_android.YoutubeDLRequest
+import com.yausername.youtubedl_android.YoutubeDLResponse
+import org.apache.commons.io.FileUtils
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.io.File
+
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [33])
+class BatchBenchmark {
+    private lateinit var context: Context
+    private lateinit var environment: BenchmarkEnvironment
+    private lateinit var downloads: File
+
+    @Before
+    fun setUp() {
+        context = ApplicationProvider.getApplicationContext()
+        environment = BenchmarkEnvironment(context)
+        environment.install()
+        environment.wipe()
+        YoutubeDL.init(context)
+        downloads = File(context.cacheDir, "batch-downloads")
+    }
+
+    @After
+    fun tearDown() {
+        FileUtils.deleteQuietly(downloads)
+        environment.wipe()
+        environment.close()
+    }
+
+    @Test
+    fun manySmallItems() {
+        val report = BenchmarkReport("batch")
+            .environment("python", environment.realPython ?: "stub")
+            .environment("items", items)
+            .environment("max_batch_size", YoutubeDL.maxBatchSize)
+        val url = environment.startFixtureServer()
+        val reset: () -> Unit = { FileUtils.deleteQuietly(downloads) }
+
+        // every caller waiting at once, as a screen queuing a podcast feed would
+        val downloadAll = { execute: (YoutubeDLRequest) -> YoutubeDLResponse ->
+            val exitCodes = IntArray(items) { -1 }
+            val threads = (0 until items).map { i ->
+                Thread {
+                    val request = YoutubeDLRequest("$url?item=$i")
+                        .addOption("-o", "${downloads.absolutePath}/%(webpage_url)s.%(ext)s")
+                        .addOption("--restrict-filenames")
+                    exitCodes[i] = execute(request).use { it.exitCode }
+                }.apply { start() }
+            }
+            threads.forEach { it.join() }
+            assertEquals(List(items) { 0 }, exitCodes.toList())
+        }
+        val individual = report.measure("download.individual", before = reset) {
+            downloadAll { YoutubeDL.execute(it) }
+        }
+        val batched = report.measure("download.batched", before = reset) {
+            downloadAll { YoutubeDL.executeBatched(it) }
+        }
+        report.recordValues("throughput.individual", throughput(individual), "items/s")
+        report.recordValues("throughput.batched", throughput(batched), "items/s")
+
+        report.write()
+        report.assertNoRegression(1.5, "download.individual", "download.batched")
+    }
+
+    private fun throughput(samplesNanos: List<Long>): List<Double> {
+        return samplesNanos.map { items / (it / 1e9) }
+    }
+
+    companion object {
+        private const val items = 32
+    }
+}
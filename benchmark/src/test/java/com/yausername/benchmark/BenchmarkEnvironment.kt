@@ -0,0 +1,162 @@
+package com.yausername.benchmark
+
+import android.content.Context
+import com.sun.net.httpserver.HttpServer
+import com.yausername.aria2c.Aria2c
+import com.yausername.ffmpeg.FFmpeg
+import com.yausername.youtubedl_android.YoutubeDL
+import org.apache.commons.io.FileUtils
+import java.io.File
+import java.io.FileOutputStream
+import java.net.InetSocketAddress
+import java.util.Random
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+/*
+ * Lays out what the libraries expect to find in nativeLibraryDir on a device: a python
+ * binary and the python/ffmpeg/aria2c package zips. Python is a shell stub unless
+ * benchmark.python points at a real interpreter, in which case the bundled yt-dlp runs.
+ */
+internal class BenchmarkEnvironment(private val context: Context) {
+    private val root = File(context.filesDir.parentFile, "benchmark")
+    private val nativeLibraryDir = File(root, "lib")
+    private val fixtureDir = File(root, "fixtures")
+    private var server: HttpServer? = null
+
+    val realPython: String? = System.getProperty("benchmark.python")?.ifEmpty { null }
+
+    fun install(packageEntries: Int = 200, entrySize: Int = 16 * 1024) {
+        nativeLibraryDir.mkdirs()
+        fixtureDir.mkdirs()
+        context.applicationInfo.nativeLibraryDir = nativeLibraryDir.absolutePath
+        val fixture = File(fixtureDir, "video.json")
+        javaClass.getResourceAsStream("/fixtures/video.json")!!.use {
+            FileUtils.copyInputStreamToFile(it, fixture)
+        }
+        writeExecutable(File(nativeLibraryDir, "libpython.so"), pythonScript(fixture))
+        writeZip(File(nativeLibraryDir, "libpython.zip.so"), "usr/lib/python3.11", packageEntries, entrySize)
+        writeZip(File(nativeLibraryDir, "libffmpeg.zip.so"), "usr/lib", packageEntries / 4, entrySize)
+        writeZip(File(nativeLibraryDir, "libaria2c.zip.so"), "usr/lib", packageEntries / 8, entrySize)
+    }
+
+    /* drops everything init extracted or recorded, so the next init is a cold one */
+    fun wipe() {
+        FileUtils.deleteQuietly(File(context.noBackupFilesDir, YoutubeDL.baseName))
+        context.getSharedPreferences("youtubedl-android", Context.MODE_PRIVATE).edit().clear().commit()
+        resetInitialized()
+    }
+
+    fun resetInitialized() {
+        for (instance in listOf(YoutubeDL, FFmpeg, Aria2c)) {
+            val field = instance.javaClass.getDeclaredField("initialized")
+            field.isAccessible = true
+            field.setBoolean(null, false)
+        }
+    }
+
+    /* serves a small mp4-typed payload for the generic extractor when running real yt-dlp */
+    fun startFixtureServer(): String {
+        val payload = ByteArray(64 * 1024).also { Random(0).nextBytes(it) }
+        val httpServer = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+        httpServer.createContext("/fixture.mp4") { exchange ->
+            exchange.responseHeaders.add("Content-Type", "video/mp4")
+            exchange.sendResponseHeaders(200, payload.size.toLong())
+            exchange.responseBody.use { it.write(payload) }
+        }
+        httpServer.start()
+        server = httpServer
+        return "http://127.0.0.1:${httpServer.address.port}/fixture.mp4"
+    }
+
+    fun close() {
+        server?.stop(0)
+        server = null
+        FileUtils.deleteQuietly(root)
+    }
+
+    private fun pythonScript(fixture: File): String {
+        realPython?.let {
+            return """
+                |#!/bin/sh
+                |$burnLoop
+                |unset PYTHONHOME LD_LIBRARY_PATH
+                |exec "$it" "${'$'}@"
+                |""".trimMargin()
+        }
+        // $1 is the yt-dlp zipapp (or -c for the bytecode compile step), the rest are yt-dlp arguments;
+        // urls are "downloaded" one after the other and listed where --print-to-file asks for,
+        // a playlist has playlistEntries entries, each printing playlistEntryLines lines
+        return """
+            |#!/bin/sh
+            |[ "${'$'}1" = "-c" ] && exit 1
+            |$burnLoop
+            |list=; item=; previous=
+            |for arg in "${'$'}@"; do
+            |    case "${'$'}arg" in
+            |        --version) echo "2025.11.12"; exit 0 ;;
+            |        --flat-playlist)
+            |            for i in ${'$'}(seq 1 $playlistEntries); do
+            |                echo "{\"id\": \"entry${'$'}i\", \"ie_key\": \"Generic\", \"playlist_index\": ${'$'}i}"
+            |            done
+            |            exit 0 ;;
+            |        --dump-json) cat "${fixture.absolutePath}"; exit 0 ;;
+            |    esac
+            |    case "${'$'}previous" in
+            |        after_move:*) list="${'$'}arg" ;;
+            |        --playlist-items) item="${'$'}arg" ;;
+            |    esac
+            |    previous="${'$'}arg"
+            |done
+            |if [ -n "${'$'}item" ]; then
+            |    for line in ${'$'}(seq 1 $playlistEntryLines); do echo "[download] entry ${'$'}item line ${'$'}line"; done
+            |    exit 0
+            |fi
+            |for arg in "${'$'}@"; do
+            |    case "${'$'}arg" in
+            |        http*)
+            |            echo "[generic] Extracting URL: ${'$'}arg"
+            |            echo "[download] 100.0% of 1.00MiB at 1.00MiB/s ETA 00:00"
+            |            [ -n "${'$'}list" ] && echo "${'$'}arg" >> "${'$'}list" ;;
+            |    esac
+            |done
+            |echo "[download] 100.0% of 1.00MiB at 1.00MiB/s ETA 00:00"
+            |""".trimMargin()
+    }
+
+    /* --benchmark-burn keeps a core busy until the execution is cancelled, with either python */
+    private val burnLoop = """
+        |for arg in "${'$'}@"; do
+        |    [ "${'$'}arg" = "$burnOption" ] && while :; do :; done
+        |done
+        |""".trimMargin()
+
+    private fun writeExecutable(file: File, content: String) {
+        file.writeText(content)
+        file.setExecutable(true)
+    }
+
+    companion object {
+        const val burnOption = "--benchmark-burn"
+        const val playlistEntries = 2
+        const val playlistEntryLines = 500
+
+        fun writeZip(file: File, prefix: String, entries: Int, entrySize: Int) {
+            val random = Random(entries.toLong())
+            val data = ByteArray(entrySize)
+            ZipOutputStream(FileOutputStream(file)).use { zip ->
+                for (i in 0 until entries) {
+                    // half random, half repetitive, roughly the compressibility of a python tree
+                    random.nextBytes(data)
+                    data.fill('a'.code.toByte(), entrySize / 2, entrySize)
+                    zip.putNextEntry(ZipEntry("$prefix/module_$i.py"))
+                    zip.write(data)
+                    zip.closeEntry()
+                }
+                zip.putNextEntry(ZipEntry("usr/etc/tls/cert.pem"))
+                zip.write("stub".toByteArray())
+                zip.closeEntry()
+            }
+        }
+    }
+}
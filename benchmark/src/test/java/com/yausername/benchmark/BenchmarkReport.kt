@@ -0,0 +1,89 @@
+package com.yausername.benchmark
+
+import org.json.JSONArray
+import org.json.JSONObject
+import org.junit.Assert.assertTrue
+import java.io.File
+
+/*
+ * Collects samples per metric and writes them to <benchmark.outputDir>/<suite>.json.
+ * When benchmark.baselineDir holds a report of the same suite, medians are compared
+ * against it so a run fails on regressions beyond the tolerance.
+ */
+internal class BenchmarkReport(private val suite: String) {
+    private val results = JSONArray()
+    private val medians = LinkedHashMap<String, Double>()
+    private val environment = JSONObject()
+
+    val iterations: Int = System.getProperty("benchmark.iterations")?.toIntOrNull() ?: 5
+
+    fun environment(key: String, value: Any): BenchmarkReport {
+        environment.put(key, value)
+        return this
+    }
+
+    fun measure(name: String, before: () -> Unit = {}, block: () -> Unit): List<Long> {
+        val samples = ArrayList<Long>()
+        for (i in 0 until iterations) {
+            before()
+            val start = System.nanoTime()
+            block()
+            samples.add(System.nanoTime() - start)
+        }
+        record(name, samples)
+        return samples
+    }
+
+    fun record(name: String, samplesNanos: List<Long>, unit: String = "ms") {
+        recordValues(name, samplesNanos.map { it / 1_000_000.0 }, unit)
+    }
+
+    fun recordValues(name: String, values: List<Double>, unit: String) {
+        val sorted = values.sorted()
+        val median = sorted[sorted.size / 2]
+        medians[name] = median
+        results.put(
+            JSONObject()
+                .put("name", name)
+                .put("unit", unit)
+                .put("samples", JSONArray(values))
+                .put("min", sorted.first())
+                .put("median", median)
+                .put("max", sorted.last())
+        )
+    }
+
+    fun write(): File {
+        val outputDir = File(System.getProperty("benchmark.outputDir") ?: "build/benchmark-results")
+        outputDir.mkdirs()
+        val file = File(outputDir, "$suite.json")
+        val report = JSONObject()
+            .put("suite", suite)
+            .put("timestamp", System.currentTimeMillis())
+            .put("iterations", iterations)
+            .put("environment", environment)
+            .put("results", results)
+        file.writeText(report.toString(2))
+        println("benchmark report written to ${file.absolutePath}")
+        return file
+    }
+
+    /* only metrics where lower is better should be guarded */
+    fun assertNoRegression(tolerance: Double = 1.5, vararg names: String) {
+        val baselineDir = System.getProperty("benchmark.baselineDir")?.ifEmpty { null } ?: return
+        val baselineFile = File(baselineDir, "$suite.json")
+        if (!baselineFile.exists()) return
+        val baseline = JSONObject(baselineFile.readText()).getJSONArray("results")
+        for (i in 0 until baseline.length()) {
+            val result = baseline.getJSONObject(i)
+            val name = result.getString("name")
+            if (names.isNotEmpty() && name !in names) continue
+            val current = medians[name] ?: continue
+            val previous = result.getDouble("median")
+            assertTrue(
+                "$suite/$name regressed: median $current vs baseline $previous",
+                current <= previous * tolerance
+            )
+        }
+    }
+}
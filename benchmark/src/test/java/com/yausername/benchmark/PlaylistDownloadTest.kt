@@ -0,0 +1,59 @@
+package com.yausername.benchmark
+
+import android.content.Context
+import androidx.test.core.app.ApplicationProvider
+import com.yausername.youtubedl_android.OutputSink
+import com.yausername.youtubedl_android.YoutubeDL
+import com.yausername.youtubedl_android.YoutubeDLCoroutines
+import com.yausername.youtubedl_android.YoutubeDLRequest
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assume.assumeTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.io.File
+
+/* entries downloading together into one file sink, with the stub's playlist */
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [33])
+class PlaylistDownloadTest {
+    private lateinit var context: Context
+    private lateinit var environment: BenchmarkEnvironment
+
+    @Before
+    fun setUp() {
+        context = ApplicationProvider.getApplicationContext()
+        environment = BenchmarkEnvironment(context)
+        assumeTrue(environment.realPython == null)
+        environment.install()
+        environment.wipe()
+        YoutubeDL.init(context)
+    }
+
+    @After
+    fun tearDown() {
+        environment.wipe()
+        environment.close()
+    }
+
+    @Test
+    fun entriesShareAFileSink() {
+        val output = File(context.filesDir, "playlist.txt")
+        val request = YoutubeDLRequest("https://example.com/playlist").apply { outSink = OutputSink.file(output) }
+        val result = runBlocking { YoutubeDLCoroutines.downloadPlaylist(request, parallelism = 2) }
+
+        assertEquals(BenchmarkEnvironment.playlistEntries, result.total)
+        assertEquals(BenchmarkEnvironment.playlistEntries, result.downloaded)
+        // every line of every entry, each entry's in order
+        val lines = output.readLines()
+        for (entry in 1..BenchmarkEnvironment.playlistEntries) {
+            val expected = (1..BenchmarkEnvironment.playlistEntryLines).map { "[download] entry $entry line $it" }
+            assertEquals(expected, lines.filter { it.startsWith("[download] entry $entry ") })
+        }
+        assertEquals(BenchmarkEnvironment.playlistEntries * BenchmarkEnvironment.playlistEntryLines, lines.size)
+    }
+}
@@ -0,0 +1,75 @@
+package com.yausername.benchmark
+
+import android.content.Context
+import androidx.test.core.app.ApplicationProvider
+import com.yausername.youtubedl_android.YoutubeDL
+import com.yausername.youtubedl_common.utils.PackageArchive
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.io.File
+import java.io.FileOutputStream
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+/* a stdlib module left out of the manifest is imported through the fallback zip */
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [33])
+class PythonFallbackTest {
+    private lateinit var context: Context
+    private lateinit var environment: BenchmarkEnvironment
+
+    @Before
+    fun setUp() {
+        context = ApplicationProvider.getApplicationContext()
+        environment = BenchmarkEnvironment(context)
+        environment.install()
+        environment.wipe()
+    }
+
+    @After
+    fun tearDown() {
+        environment.wipe()
+        environment.close()
+    }
+
+    @Test
+    fun missedModuleFromPackageArchive() {
+        val zip = File(context.cacheDir, "python.zip")
+        ZipOutputStream(FileOutputStream(zip)).use { out ->
+            for ((name, content) in modules) {
+                out.putNextEntry(ZipEntry(name))
+                out.write(content.toByteArray())
+                out.closeEntry()
+            }
+        }
+        PackageArchive.repack(zip, File(context.applicationInfo.nativeLibraryDir, "libpython.zip.so"))
+        zip.delete()
+        YoutubeDL.init(context, setOf("profiled.py"))
+
+        val stdlib = File(context.noBackupFilesDir, "${YoutubeDL.baseName}/packages/python/usr/lib/python3.11")
+        assertFalse(File(stdlib, "fallback_probe").exists())
+        // what site does with the .pth at startup, then the import
+        val pth = File(stdlib, "site-packages/youtubedl-android-fallback.pth")
+        val script = "exec(open('${pth.absolutePath}').read())\nimport fallback_probe\nprint(fallback_probe.VALUE)"
+        val process = ProcessBuilder(environment.realPython ?: "python3", "-c", script)
+            .redirectErrorStream(true).start()
+        val output = process.inputStream.bufferedReader().use { it.readText() }.trim()
+        assertEquals(output, 0, process.waitFor())
+        assertEquals("42", output)
+    }
+
+    companion object {
+        private val modules = listOf(
+            "usr/lib/python3.11/profiled.py" to "VALUE = 1\n",
+            "usr/lib/python3.11/fallback_probe/__init__.py" to "from fallback_probe.inner import VALUE\n",
+            "usr/lib/python3.11/fallback_probe/inner.py" to "VALUE = 42\n",
+            "usr/etc/tls/cert.pem" to "stub"
+        )
+    }
+}
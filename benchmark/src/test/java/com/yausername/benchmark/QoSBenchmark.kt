@@ -0,0 +1,102 @@
+package com.yausername.benchmark
+
+import android.content.Context
+import androidx.test.core.app.ApplicationProvider
+import com.yausername.youtubedl_android.YoutubeDL
+import com.yausername.youtubedl_android.YoutubeDLRequest
+import com.yausername.youtubedl_android.YoutubeDLRequest.QoS
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.fail
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.util.Collections
+
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [33])
+class QoSBenchmark {
+    private lateinit var context: Context
+    private lateinit var environment: BenchmarkEnvironment
+    private val cores = Runtime.getRuntime().availableProcessors()
+
+    @Before
+    fun setUp() {
+        context = ApplicationProvider.getApplicationContext()
+        environment = BenchmarkEnvironment(context)
+        environment.install()
+        environment.wipe()
+        YoutubeDL.init(context)
+    }
+
+    @After
+    fun tearDown() {
+        YoutubeDL.destroyProcessesByTag(loadTag)
+        YoutubeDL.preemptionBudget = cores
+        environment.wipe()
+        environment.close()
+    }
+
+    @Test
+    fun interactiveUnderLoad() {
+        val report = BenchmarkReport("qos")
+            .environment("python", environment.realPython ?: "stub")
+            .environment("cores", cores)
+        val url = environment.startFixtureServer()
+        val getInfo = {
+            assertEquals("mp4", YoutubeDL.getInfo(YoutubeDLRequest(url).apply { qos = QoS.INTERACTIVE }).ext)
+        }
+        report.measure("get_info.idle", block = getInfo)
+
+        // twice as many busy background executions as cores
+        val loadFailures = Collections.synchronizedList(ArrayList<Throwable>())
+        val load = (0 until cores * 2).map {
+            Thread {
+                try {
+                    YoutubeDL.execute(YoutubeDLRequest(emptyList()).addOption(BenchmarkEnvironment.burnOption)
+                        .addTag(loadTag).apply { qos = QoS.BACKGROUND })
+                } catch (e: YoutubeDL.CanceledException) {
+                } catch (e: Throwable) {
+                    loadFailures.add(e)
+                }
+            }.apply { start() }
+        }
+        awaitLoad(load.size, loadFailures)
+
+        // niceness alone
+        YoutubeDL.preemptionBudget = Int.MAX_VALUE
+        report.measure("get_info.loaded", block = getInfo)
+        // niceness and background executions paused while getInfo runs
+        YoutubeDL.preemptionBudget = cores
+        report.measure("get_info.loaded.preempting", block = getInfo)
+        report.recordValues("load.paused_after", listOf(YoutubeDL.jobs(loadTag).count { it.isPaused }.toDouble()), "jobs")
+
+        YoutubeDL.destroyProcessesByTag(loadTag)
+        load.forEach { it.join() }
+
+        report.write()
+        report.assertNoRegression(1.5, "get_info.idle", "get_info.loaded", "get_info.loaded.preempting")
+    }
+
+    /* every load execution running with a pid, which preemption needs to pause it */
+    private fun awaitLoad(executions: Int, failures: List<Throwable>) {
+        val deadline = System.currentTimeMillis() + loadStartTimeoutMillis
+        while (true) {
+            failures.firstOrNull()?.let { throw AssertionError("a load execution failed", it) }
+            val started = YoutubeDL.jobs(loadTag).count { it.pid > 0 }
+            if (started == executions) return
+            if (System.currentTimeMillis() > deadline) {
+                fail("$started of $executions load executions had a pid after $loadStartTimeoutMillis ms; " +
+                        "the pid stays -1 when the JVM denies reflection on its Process implementation")
+            }
+            Thread.sleep(10)
+        }
+    }
+
+    companion object {
+        private const val loadTag = "benchmark-load"
+        private const val loadStartTimeoutMillis = 30_000L
+    }
+}
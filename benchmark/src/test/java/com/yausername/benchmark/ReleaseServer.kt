@@ -0,0 +1,115 @@
+package com.yausername.benchmark
+
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+import org.json.JSONArray
+import org.json.JSONObject
+import java.net.InetSocketAddress
+import java.security.MessageDigest
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/*
+ * Local stand-in for the GitHub releases api of an update channel: serves a release object
+ * shaped like the real one (release notes last) with an etag, the yt-dlp asset with range
+ * support and its SHA2-256SUMS. dropAfter cuts the next asset responses short, like a
+ * flaky mobile link.
+ */
+internal class ReleaseServer(private val binary: ByteArray) : AutoCloseable {
+    private val server = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+    private var revision = 0
+
+    @Volatile
+    var tag = "2025.11.12"
+
+    /* bytes after which each of the next drops asset responses is cut */
+    @Volatile
+    var dropAfter = 0
+    val drops = AtomicInteger()
+
+    val apiRequests = AtomicInteger()
+    val bytesServed = AtomicLong()
+    val assetBytesServed = AtomicLong()
+
+    val binarySize: Int
+        get() = binary.size
+
+    val apiUrl: String
+        get() = "http://127.0.0.1:${server.address.port}/releases/latest"
+
+    init {
+        server.createContext("/releases/latest") { exchange ->
+            apiRequests.incrementAndGet()
+            val etag = "\"$tag-$revision\""
+            if (exchange.requestHeaders.getFirst("If-None-Match") == etag) {
+                exchange.sendResponseHeaders(304, -1)
+                exchange.close()
+            } else {
+                exchange.responseHeaders.add("ETag", etag)
+                send(exchange, release().toString().toByteArray())
+            }
+        }
+        server.createContext("/download/yt-dlp") { sendAsset(it) }
+        server.createContext("/download/SHA2-256SUMS") { exchange ->
+            val sha = MessageDigest.getInstance("SHA-256").digest(binary).joinToString("") { "%02x".format(it) }
+            send(exchange, "$sha  yt-dlp\n".toByteArray())
+        }
+        server.start()
+    }
+
+    /* same release, new etag, as when GitHub re-renders the response */
+    fun touch() {
+        revision++
+    }
+
+    private fun release(): JSONObject {
+        val assets = JSONArray()
+        for (name in listOf("yt-dlp", "yt-dlp.exe", "yt-dlp_macos", "yt-dlp_linux", "SHA2-256SUMS")) {
+            assets.put(
+                JSONObject()
+                    .put("name", name)
+                    .put("size", binary.size)
+                    .put("uploader", JSONObject().put("login", "github-actions[bot]"))
+                    .put("browser_download_url", "http://127.0.0.1:${server.address.port}/download/$name")
+            )
+        }
+        return JSONObject()
+            .put("url", apiUrl)
+            .put("author", JSONObject().put("login", "github-actions[bot]").put("type", "Bot"))
+            .put("tag_name", tag)
+            .put("name", "yt-dlp $tag")
+            .put("prerelease", false)
+            .put("assets", assets)
+            .put("body", "- release notes line\n".repeat(2000))
+    }
+
+    private fun sendAsset(exchange: HttpExchange) {
+        val etag = "\"asset-${binary.size}\""
+        val range = exchange.requestHeaders.getFirst("Range")
+        exchange.responseHeaders.add("ETag", etag)
+        var from = 0
+        if (range != null && exchange.requestHeaders.getFirst("If-Range") == etag) {
+            from = range.removePrefix("bytes=").removeSuffix("-").toInt()
+            exchange.responseHeaders.add("Content-Range", "bytes $from-${binary.size - 1}/${binary.size}")
+            exchange.sendResponseHeaders(206, (binary.size - from).toLong())
+        } else {
+            exchange.sendResponseHeaders(200, binary.size.toLong())
+        }
+        val length = if (drops.getAndDecrement() > 0) minOf(dropAfter, binary.size - from) else binary.size - from
+        exchange.responseBody.write(binary, from, length)
+        bytesServed.addAndGet(length.toLong())
+        assetBytesServed.addAndGet(length.toLong())
+        // closing before the announced length is written resets the connection
+        exchange.close()
+    }
+
+    private fun send(exchange: HttpExchange, payload: ByteArray) {
+        exchange.sendResponseHeaders(200, payload.size.toLong())
+        exchange.responseBody.use { it.write(payload) }
+        bytesServed.addAndGet(payload.size.toLong())
+    }
+
+    override fun close() {
+        server.stop(0)
+    }
+}
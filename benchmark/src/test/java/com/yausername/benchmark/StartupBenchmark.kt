@@ -0,0 +1,90 @@
+package com.yausername.benchmark
+
+import android.content.Context
+import androidx.test.core.app.ApplicationProvider
+import com.yausername.aria2c.Aria2c
+import com.yausername.ffmpeg.FFmpeg
+import com.yausername.youtubedl_android.PythonProfile
+import com.yausername.youtubedl_android.YoutubeDL
+import com.yausername.youtubedl_android.YoutubeDLRequest
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [33])
+class StartupBenchmark {
+    private lateinit var context: Context
+    private lateinit var environment: BenchmarkEnvironment
+
+    @Before
+    fun setUp() {
+        context = ApplicationProvider.getApplicationContext()
+        environment = BenchmarkEnvironment(context)
+        environment.install()
+    }
+
+    @After
+    fun tearDown() {
+        environment.wipe()
+        environment.close()
+    }
+
+    @Test
+    fun startup() {
+        val report = BenchmarkReport("startup")
+            .environment("python", environment.realPython ?: "stub")
+        report.measure("cold_init.youtubedl", before = { environment.wipe() }) {
+            YoutubeDL.init(context)
+        }
+        // a profile that needs a quarter of the synthetic stdlib
+        val manifest = (0 until 50).map { "module_$it.py" }.toSet()
+        report.measure("cold_init.youtubedl.pruned", before = { environment.wipe() }) {
+            YoutubeDL.init(context, manifest)
+        }
+        PythonProfile.lastExtraction!!.let {
+            report.recordValues("pruned.skipped_bytes", listOf(it.skippedBytes.toDouble()), "bytes")
+            report.recordValues("pruned.estimated_saved", listOf(it.estimatedSavedMillis.toDouble()), "ms")
+        }
+        report.measure("cold_init.ffmpeg", before = { environment.wipe() }) {
+            FFmpeg.init(context)
+        }
+        report.measure("cold_init.aria2c", before = { environment.wipe() }) {
+            Aria2c.init(context)
+        }
+        environment.wipe()
+        YoutubeDL.init(context)
+        FFmpeg.init(context)
+        Aria2c.init(context)
+        report.measure("warm_init.all", before = { environment.resetInitialized() }) {
+            YoutubeDL.init(context)
+            FFmpeg.init(context)
+            Aria2c.init(context)
+        }
+
+        val firstLine = ArrayList<Long>()
+        report.measure("execute.version") {
+            val start = System.nanoTime()
+            var first = 0L
+            YoutubeDL.execute(YoutubeDLRequest(emptyList()).addOption("--version")) { _, _, _ ->
+                if (first == 0L) first = System.nanoTime() - start
+            }
+            firstLine.add(first)
+        }
+        report.record("execute.version.first_stdout", firstLine)
+
+        val url = environment.startFixtureServer()
+        report.measure("get_info.fixture") {
+            val info = YoutubeDL.getInfo(url)
+            assertEquals("mp4", info.ext)
+        }
+
+        report.write()
+        report.assertNoRegression(1.5, "cold_init.youtubedl", "cold_init.youtubedl.pruned", "cold_init.ffmpeg",
+            "cold_init.aria2c", "warm_init.all", "execute.version", "execute.version.first_stdout", "get_info.fixture")
+    }
+}
@@ -0,0 +1,99 @@
+package com.yausername.benchmark
+
+import android.content.Context
+import androidx.test.core.app.ApplicationProvider
+import com.yausername.youtubedl_android.YoutubeDL
+import com.yausername.youtubedl_android.YoutubeDL.UpdateStatus
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.util.Random
+import java.util.concurrent.TimeUnit
+
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [33])
+class UpdateBenchmark {
+    private lateinit var context: Context
+    private lateinit var environment: BenchmarkEnvironment
+    private lateinit var server: ReleaseServer
+
+    @Before
+    fun setUp() {
+        context = ApplicationProvider.getApplicationContext()
+        environment = BenchmarkEnvironment(context)
+        environment.install()
+        environment.wipe()
+        YoutubeDL.init(context)
+        server = ReleaseServer(ByteArray(512 * 1024).also { Random(0).nextBytes(it) })
+    }
+
+    @After
+    fun tearDown() {
+        YoutubeDL.updateCheckIntervalMillis = TimeUnit.MINUTES.toMillis(10)
+        server.close()
+        environment.wipe()
+        environment.close()
+    }
+
+    @Test
+    fun updateCheck() {
+        val channel = YoutubeDL.UpdateChannel(server.apiUrl)
+        val report = BenchmarkReport("update")
+        YoutubeDL.updateCheckIntervalMillis = 0
+        assertEquals(UpdateStatus.DONE, YoutubeDL.updateYoutubeDL(context, channel))
+        assertEquals(server.tag, YoutubeDL.version(context))
+
+        // a new etag every time forces the full response and the streaming parse
+        val fullBytes = served {
+            report.measure("check.full", before = { server.touch() }) {
+                assertEquals(UpdateStatus.ALREADY_UP_TO_DATE, YoutubeDL.updateYoutubeDL(context, channel))
+            }
+        }
+        val conditionalBytes = served {
+            report.measure("check.not_modified") {
+                assertEquals(UpdateStatus.ALREADY_UP_TO_DATE, YoutubeDL.updateYoutubeDL(context, channel))
+            }
+        }
+        YoutubeDL.updateCheckIntervalMillis = TimeUnit.HOURS.toMillis(1)
+        val requests = server.apiRequests.get()
+        report.measure("check.throttled") {
+            assertEquals(UpdateStatus.ALREADY_UP_TO_DATE, YoutubeDL.updateYoutubeDL(context, channel))
+        }
+        assertEquals(requests, server.apiRequests.get())
+        // every iteration installs a new release over a link that drops twice
+        YoutubeDL.updateCheckIntervalMillis = 0
+        var release = 0
+        val assetBytes = server.assetBytesServed.get()
+        val throughput = ArrayList<Double>()
+        report.measure("download.flaky", before = {
+            server.tag = "2025.12.${++release}"
+            server.drops.set(2)
+            server.dropAfter = 128 * 1024
+        }) {
+            assertEquals(UpdateStatus.DONE, YoutubeDL.updateYoutubeDL(context, channel))
+            val stats = YoutubeDL.lastUpdateDownload!!
+            assertTrue(stats.verified)
+            throughput.add(stats.bytesPerSecond / 1024.0)
+        }
+        // 1.0 when every byte of the binary crossed the link once
+        val downloaded = (server.assetBytesServed.get() - assetBytes) / report.iterations.toDouble()
+        report.recordValues("download.flaky.transferred", listOf(downloaded / server.binarySize), "x")
+        report.recordValues("download.flaky.throughput", throughput, "KiB/s")
+        report.recordValues("bytes.full", listOf(fullBytes / report.iterations.toDouble()), "bytes")
+        report.recordValues("bytes.not_modified", listOf(conditionalBytes / report.iterations.toDouble()), "bytes")
+
+        report.write()
+        report.assertNoRegression(1.5, "check.full", "check.not_modified", "check.throttled")
+    }
+
+    private fun served(block: () -> Unit): Long {
+        val before = server.bytesServed.get()
+        block()
+        return server.bytesServed.get() - before
+    }
+}
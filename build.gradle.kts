@@ -37,6 +37,11 @@ extra.apply {
     set("commonsIoVer", "2.5") // supports java 1.6
     set("commonsCompressVer", "1.12") // supports java 1.6
     set("coreKtxVer", "1.8.0")
+    set("coroutinesVer", "1.6.4") // 1.7 and later need kotlin 1.8
+    set("reactiveStreamsVer", "1.0.4")
+    set("rxJava2Ver", "2.2.21")
+    set("robolectricVer", "4.11.1")
+    set("androidxTestCoreVer", "1.5.0")
 }
 
 allprojects {
@@ -0,0 +1,43 @@
+package com.yausername.youtubedl_common.utils
+
+class ExtractionStats {
+    var extractedFiles = 0
+        internal set
+    var extractedBytes = 0L
+        internal set
+    var skippedFiles = 0
+        internal set
+    var skippedBytes = 0L
+        internal set
+    var deduplicatedFiles = 0
+        internal set
+    var deduplicatedBytes = 0L
+        internal set
+    var elapsedMillis = 0L
+        internal set
+
+    /* extrapolates the time the skipped files would have taken at the observed rate */
+    val estimatedSavedMillis: Long
+        get() = if (extractedBytes == 0L) 0 else skippedBytes * elapsedMillis / extractedBytes
+
+    internal fun extracted(size: Long) {
+        extractedFiles++
+        extractedBytes += size
+    }
+
+    internal fun deduplicated(size: Long) {
+        deduplicatedFiles++
+        deduplicatedBytes += size
+    }
+
+    internal fun skipped(size: Long) {
+        skippedFiles++
+        skippedBytes += size
+    }
+
+    override fun toString(): String {
+        return "extracted $extractedFiles files ($extractedBytes bytes) in $elapsedMillis ms, " +
+                "skipped $skippedFiles files ($skippedBytes bytes, ~$estimatedSavedMillis ms), " +
+                "shared $deduplicatedFiles libraries ($deduplicatedBytes bytes)"
+    }
+}
@@ -0,0 +1,10 @@
+package com.yausername.youtubedl_common.utils
+
+object HexUtils {
+    /* lowercase, two digits per byte, as sha256sum prints digests */
+    fun hex(bytes: ByteArray): String {
+        val builder = StringBuilder(bytes.size * 2)
+        for (b in bytes) builder.append(String.format("%02x", b))
+        return builder.toString()
+    }
+}
@@ -0,0 +1,69 @@
+package com.yausername.youtubedl_common.utils
+
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.InputStream
+import java.nio.channels.Channels
+import java.nio.channels.FileChannel
+import java.nio.channels.ReadableByteChannel
+
+/*
+ * Installs files by writing a sibling temp file, syncing it and renaming it over the
+ * target, so readers see either the old or the new file and never a partial one.
+ */
+object InstallUtils {
+    private const val transferSize = 8L * 1024 * 1024
+    private const val tempSuffix = ".installing"
+
+    fun tempFileFor(target: File): File {
+        return File(target.parentFile, target.name + tempSuffix)
+    }
+
+    @Throws(IOException::class)
+    fun install(inputStream: InputStream, target: File) {
+        Channels.newChannel(inputStream).use { source -> install(source, target) }
+    }
+
+    @Throws(IOException::class)
+    fun install(source: File, target: File) {
+        FileInputStream(source).channel.use { install(it, target) }
+    }
+
+    @Throws(IOException::class)
+    fun install(source: ReadableByteChannel, target: File) {
+        val tmp = tempFileFor(target)
+        try {
+            write(source, tmp)
+            commit(tmp, target)
+        } finally {
+            tmp.delete()
+        }
+    }
+
+    @Throws(IOException::class)
+    fun write(source: ReadableByteChannel, file: File, append: Boolean = false): Long {
+        file.parentFile?.mkdirs()
+        FileOutputStream(file, append).channel.use { out ->
+            val start = out.size()
+            var written = 0L
+            while (true) {
+                val transferred = if (source is FileChannel) {
+                    source.transferTo(written, transferSize, out)
+                } else {
+                    out.transferFrom(source, start + written, transferSize)
+                }
+                if (transferred <= 0) break
+                written += transferred
+            }
+            out.force(true)
+            return written
+        }
+    }
+
+    @Throws(IOException::class)
+    fun commit(tmp: File, target: File) {
+        if (!tmp.renameTo(target)) throw IOException("failed to move $tmp to $target")
+    }
+}
@@ -0,0 +1,141 @@
+package com.yausername.youtubedl_common.utils
+
+import java.io.IOException
+
+/*
+ * LZ4 block format (https://github.com/lz4/lz4/blob/dev/doc/lz4_Block_format.md),
+ * greedy single-probe compressor and a bounds checked decompressor.
+ */
+internal object Lz4Block {
+    private const val minMatch = 4
+    private const val lastLiterals = 5
+    private const val matchFindLimit = 12
+    private const val maxOffset = 65535
+    private const val hashLog = 16
+
+    fun maxCompressedLength(length: Int): Int {
+        return length + length / 255 + 16
+    }
+
+    fun compress(src: ByteArray, srcOff: Int, srcLen: Int, dst: ByteArray, dstOff: Int): Int {
+        val end = srcOff + srcLen
+        val matchLimit = end - matchFindLimit
+        val table = IntArray(1 shl hashLog) { -1 }
+        var anchor = srcOff
+        var ip = srcOff
+        var op = dstOff
+        while (ip < matchLimit) {
+            val sequence = readInt(src, ip)
+            val hash = (sequence * -1640531535) ushr (32 - hashLog)
+            val ref = table[hash]
+            table[hash] = ip
+            if (ref < 0 || ip - ref > maxOffset || readInt(src, ref) != sequence) {
+                ip++
+                continue
+            }
+            var matchLength = minMatch
+            while (ip + matchLength < end - lastLiterals && src[ref + matchLength] == src[ip + matchLength]) {
+                matchLength++
+            }
+            op = writeSequence(src, anchor, ip - anchor, dst, op, ip - ref, matchLength)
+            ip += matchLength
+            anchor = ip
+        }
+        return writeSequence(src, anchor, end - anchor, dst, op, 0, 0) - dstOff
+    }
+
+    /* reads only srcLen bytes of src and writes only dstLen bytes of dst, whatever the block holds */
+    @Throws(IOException::class)
+    fun decompress(src: ByteArray, srcOff: Int, srcLen: Int, dst: ByteArray, dstOff: Int, dstLen: Int): Int {
+        val srcEnd = srcOff + srcLen
+        val dstEnd = dstOff + dstLen
+        var sp = srcOff
+        var dp = dstOff
+        while (sp < srcEnd) {
+            val token = src[sp++].toInt() and 0xFF
+            var literalLength = token ushr 4
+            if (literalLength == 15) {
+                var b: Int
+                do {
+                    if (sp == srcEnd) throw corrupt()
+                    b = src[sp++].toInt() and 0xFF
+                    literalLength += b
+                } while (b == 255)
+            }
+            if (literalLength > srcEnd - sp || literalLength > dstEnd - dp) throw corrupt()
+            System.arraycopy(src, sp, dst, dp, literalLength)
+            sp += literalLength
+            dp += literalLength
+            // the last sequence carries literals only
+            if (sp == srcEnd) break
+            if (srcEnd - sp < 2) throw corrupt()
+            val offset = (src[sp].toInt() and 0xFF) or ((src[sp + 1].toInt() and 0xFF) shl 8)
+            sp += 2
+            var matchLength = token and 0x0F
+            if (matchLength == 15) {
+                var b: Int
+                do {
+                    if (sp == srcEnd) throw corrupt()
+                    b = src[sp++].toInt() and 0xFF
+                    matchLength += b
+                } while (b == 255)
+            }
+            matchLength += minMatch
+            var ref = dp - offset
+            if (offset == 0 || ref < dstOff || matchLength > dstEnd - dp) throw corrupt()
+            if (offset >= matchLength) {
+                System.arraycopy(dst, ref, dst, dp, matchLength)
+                dp += matchLength
+            } else {
+                // overlapping match, repeats the last offset bytes
+                repeat(matchLength) { dst[dp++] = dst[ref++] }
+            }
+        }
+        return dp - dstOff
+    }
+
+    private fun corrupt() = IOException("corrupt lz4 block")
+
+    private fun writeSequence(
+        src: ByteArray, literalOff: Int, literalLength: Int,
+        dst: ByteArray, dstOff: Int, offset: Int, matchLength: Int
+    ): Int {
+        var op = dstOff
+        val tokenPos = op++
+        var token = if (literalLength >= 15) {
+            op = writeLength(dst, op, literalLength - 15)
+            15 shl 4
+        } else literalLength shl 4
+        System.arraycopy(src, literalOff, dst, op, literalLength)
+        op += literalLength
+        if (matchLength > 0) {
+            dst[op++] = offset.toByte()
+            dst[op++] = (offset ushr 8).toByte()
+            val length = matchLength - minMatch
+            token = token or if (length >= 15) {
+                op = writeLength(dst, op, length - 15)
+                15
+            } else length
+        }
+        dst[tokenPos] = token.toByte()
+        return op
+    }
+
+    private fun writeLength(dst: ByteArray, dstOff: Int, length: Int): Int {
+        var op = dstOff
+        var remaining = length
+        while (remaining >= 255) {
+            dst[op++] = 255.toByte()
+            remaining -= 255
+        }
+        dst[op++] = remaining.toByte()
+        return op
+    }
+
+    private fun readInt(src: ByteArray, pos: Int): Int {
+        return (src[pos].toInt() and 0xFF) or
+                ((src[pos + 1].toInt() and 0xFF) shl 8) or
+                ((src[pos + 2].toInt() and 0xFF) shl 16) or
+                ((src[pos + 3].toInt() and 0xFF) shl 24)
+    }
+}
@@ -0,0 +1,326 @@
+package com.yausername.youtubedl_common.utils
+
+import android.system.Os
+import org.apache.commons.compress.archivers.zip.ZipFile
+import org.apache.commons.io.IOUtils
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.InputStream
+import java.io.OutputStream
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+import java.util.Arrays
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.Semaphore
+import java.util.zip.Deflater
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+/*
+ * Package archive: an entry index followed by the concatenated file contents, cut into
+ * independently LZ4 compressed blocks so extraction can inflate them on all cores.
+ *
+ * magic, entry count, entries (type, name, size, permission bits, symlink target),
+ * then per block: raw length, stored length, payload (stored raw when it does not shrink)
+ */
+object PackageArchive {
+    private val magic = "YDLPKG2\n".toByteArray(StandardCharsets.US_ASCII)
+    private const val blockSize = 1 shl 20
+    private const val typeDirectory = 0
+    private const val typeFile = 1
+    private const val typeSymlink = 2
+
+    private class Entry(val type: Int, val name: String, val size: Long, val mode: Int, val linkTarget: String?)
+
+    /* Os.symlink, which host unit tests replace as android.system is not there */
+    internal var symlink: (target: String, path: String) -> Unit = { target, path -> Os.symlink(target, path) }
+
+    fun isPackageArchive(file: File): Boolean {
+        if (!file.isFile || file.length() < magic.size) return false
+        val header = ByteArray(magic.size)
+        FileInputStream(file).use { IOUtils.readFully(it, header) }
+        return Arrays.equals(header, magic)
+    }
+
+    /* converts a runtime zip into a package archive, keeping directories, unix symlinks and file modes */
+    @Throws(IOException::class)
+    fun repack(zip: File, target: File) {
+        ZipFile(zip).use { zipFile ->
+            val zipEntries = zipFile.entries.toList()
+            val entries = zipEntries.map {
+                when {
+                    it.isDirectory -> Entry(typeDirectory, it.name, 0, 0, null)
+                    it.isUnixSymlink -> Entry(
+                        typeSymlink, it.name, 0, 0,
+                        zipFile.getInputStream(it).use { `in` -> IOUtils.toString(`in`, StandardCharsets.UTF_8) }
+                    )
+                    else -> Entry(typeFile, it.name, it.size, it.unixMode and 0x1FF, null)
+                }
+            }
+            DataOutputStream(BufferedOutputStream(FileOutputStream(target))).use { out ->
+                writeIndex(out, entries)
+                val writer = BlockWriter(out)
+                for (i in zipEntries.indices) {
+                    if (entries[i].type != typeFile) continue
+                    zipFile.getInputStream(zipEntries[i]).use { writer.write(it) }
+                }
+                writer.flush()
+            }
+        }
+    }
+
+    @JvmOverloads
+    @Throws(Exception::class)
+    fun extract(
+        sourceFile: File,
+        targetDirectory: File,
+        threads: Int = Runtime.getRuntime().availableProcessors(),
+        filter: ((String) -> Boolean)? = null,
+        store: SharedLibraryStore? = null
+    ): ExtractionStats {
+        val stats = ExtractionStats()
+        DataInputStream(BufferedInputStream(FileInputStream(sourceFile), blockSize)).use { `in` ->
+            val header = ByteArray(magic.size)
+            `in`.readFully(header)
+            if (!Arrays.equals(header, magic)) throw IOException("not a package archive: $sourceFile")
+            val entries = readIndex(`in`)
+            // skipped files keep their slot, their bytes still occupy the block stream
+            val files = ArrayList<Pair<File?, Long>>()
+            val modes = ArrayList<Pair<File, Int>>()
+            for (entry in entries) {
+                val entryDestination = File(targetDirectory, entry.name)
+                // prevent zipSlip
+                if (!entryDestination.canonicalPath.startsWith(targetDirectory.canonicalPath + File.separator)) {
+                    throw IllegalAccessException("Entry is outside of the target dir: " + entry.name)
+                }
+                when (entry.type) {
+                    typeDirectory -> entryDestination.mkdirs()
+                    typeSymlink -> {
+                        entryDestination.parentFile?.mkdirs()
+                        symlink(entry.linkTarget!!, entryDestination.absolutePath)
+                    }
+                    else -> if (filter != null && !filter(entry.name)) {
+                        stats.skipped(entry.size)
+                        files.add(null to entry.size)
+                    } else {
+                        entryDestination.parentFile?.mkdirs()
+                        RandomAccessFile(entryDestination, "rw").use { it.setLength(entry.size) }
+                        files.add(entryDestination to entry.size)
+                        if (entry.mode != 0) modes.add(entryDestination to entry.mode)
+                        stats.extracted(entry.size)
+                    }
+                }
+            }
+            extractBlocks(`in`, files, threads)
+            // once written, a mode may take away the owner's write permission
+            for ((file, mode) in modes) applyMode(file, mode)
+            if (store != null) {
+                for (entry in entries) {
+                    if (entry.type == typeFile && store.isLibrary(entry.name)) {
+                        val file = File(targetDirectory, entry.name)
+                        if (file.exists()) store.adopt(file, stats)
+                    }
+                }
+            }
+        }
+        return stats
+    }
+
+    /*
+     * Copies the files the filter accepts into a zip, for readers that only understand zips
+     * (python's zipimport). The blocks are read one after the other, up to the last file taken.
+     */
+    @Throws(IOException::class)
+    fun copyToZip(sourceFile: File, target: File, filter: (String) -> Boolean) {
+        DataInputStream(BufferedInputStream(FileInputStream(sourceFile), blockSize)).use { `in` ->
+            val header = ByteArray(magic.size)
+            `in`.readFully(header)
+            if (!Arrays.equals(header, magic)) throw IOException("not a package archive: $sourceFile")
+            val entries = readIndex(`in`).filter { it.type == typeFile }
+            val taken = entries.map { filter(it.name) }
+            val last = taken.lastIndexOf(true)
+            val reader = BlockReader(`in`)
+            ZipOutputStream(BufferedOutputStream(FileOutputStream(target))).use { zip ->
+                zip.setLevel(Deflater.BEST_SPEED)
+                for (i in 0..last) {
+                    if (!taken[i]) {
+                        reader.copy(null, entries[i].size)
+                        continue
+                    }
+                    zip.putNextEntry(ZipEntry(entries[i].name))
+                    reader.copy(zip, entries[i].size)
+                    zip.closeEntry()
+                }
+            }
+        }
+    }
+
+    private fun extractBlocks(`in`: DataInputStream, files: List<Pair<File?, Long>>, threads: Int) {
+        val starts = LongArray(files.size)
+        var total = 0L
+        for (i in files.indices) {
+            starts[i] = total
+            total += files[i].second
+        }
+        val executor: ExecutorService = Executors.newFixedThreadPool(threads.coerceAtLeast(1))
+        // bounds the compressed blocks held in memory while workers catch up with the reader
+        val inFlight = Semaphore(threads.coerceAtLeast(1) * 2)
+        val futures = ArrayList<Future<*>>()
+        try {
+            var blockStart = 0L
+            while (blockStart < total) {
+                val rawLength = `in`.readInt()
+                val storedLength = `in`.readInt()
+                val stored = ByteArray(storedLength)
+                `in`.readFully(stored)
+                val start = blockStart
+                inFlight.acquire()
+                futures.add(executor.submit {
+                    try {
+                        val raw = if (storedLength == rawLength) stored else ByteArray(rawLength).also {
+                            if (Lz4Block.decompress(stored, 0, storedLength, it, 0, rawLength) != rawLength) {
+                                throw IOException("corrupt package block at $start")
+                            }
+                        }
+                        writeBlock(raw, start, files, starts)
+                    } finally {
+                        inFlight.release()
+                    }
+                })
+                blockStart += rawLength
+            }
+            for (future in futures) future.get()
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+
+    private fun writeBlock(raw: ByteArray, blockStart: Long, files: List<Pair<File?, Long>>, starts: LongArray) {
+        val blockEnd = blockStart + raw.size
+        var index = Arrays.binarySearch(starts, blockStart)
+        // empty files share their start with the next one, step back to the first of them
+        if (index < 0) index = -index - 2 else while (index > 0 && starts[index - 1] == blockStart) index--
+        while (index < files.size && starts[index] < blockEnd) {
+            val (file, size) = files[index]
+            if (file == null || size == 0L) {
+                index++
+                continue
+            }
+            val from = maxOf(starts[index], blockStart)
+            val to = minOf(starts[index] + size, blockEnd)
+            RandomAccessFile(file, "rw").channel.use { channel ->
+                val buffer = ByteBuffer.wrap(raw, (from - blockStart).toInt(), (to - from).toInt())
+                var position = from - starts[index]
+                while (buffer.hasRemaining()) position += channel.write(buffer, position)
+            }
+            index++
+        }
+    }
+
+    /*
+     * The permission bits java.io.File can set without Os.chmod: the owner's, and the group's
+     * and others' together, which take others' bits.
+     */
+    private fun applyMode(file: File, mode: Int) {
+        val setters = listOf<(Boolean, Boolean) -> Boolean>(file::setReadable, file::setWritable, file::setExecutable)
+        for ((i, set) in setters.withIndex()) {
+            val bit = 4 shr i
+            set(false, false)
+            if (mode and bit != 0) set(true, false) else if (mode and (bit shl 6) != 0) set(true, true)
+        }
+    }
+
+    private fun writeIndex(out: DataOutputStream, entries: List<Entry>) {
+        out.write(magic)
+        out.writeInt(entries.size)
+        for (entry in entries) {
+            out.writeByte(entry.type)
+            out.writeUTF(entry.name)
+            out.writeLong(entry.size)
+            out.writeShort(entry.mode)
+            if (entry.type == typeSymlink) out.writeUTF(entry.linkTarget!!)
+        }
+    }
+
+    private fun readIndex(`in`: DataInputStream): List<Entry> {
+        val count = `in`.readInt()
+        val entries = ArrayList<Entry>(count)
+        for (i in 0 until count) {
+            val type = `in`.readUnsignedByte()
+            val name = `in`.readUTF()
+            val size = `in`.readLong()
+            val mode = `in`.readUnsignedShort()
+            val linkTarget = if (type == typeSymlink) `in`.readUTF() else null
+            entries.add(Entry(type, name, size, mode, linkTarget))
+        }
+        return entries
+    }
+
+    private class BlockReader(private val `in`: DataInputStream) {
+        private var block = ByteArray(0)
+        private var position = 0
+
+        /* the next size bytes of file content, dropped when out is null */
+        fun copy(out: OutputStream?, size: Long) {
+            var left = size
+            while (left > 0) {
+                if (position == block.size) next()
+                val length = minOf(left, (block.size - position).toLong()).toInt()
+                out?.write(block, position, length)
+                position += length
+                left -= length
+            }
+        }
+
+        private fun next() {
+            val rawLength = `in`.readInt()
+            val storedLength = `in`.readInt()
+            val stored = ByteArray(storedLength)
+            `in`.readFully(stored)
+            block = if (storedLength == rawLength) stored else ByteArray(rawLength).also {
+                if (Lz4Block.decompress(stored, 0, storedLength, it, 0, rawLength) != rawLength) {
+                    throw IOException("corrupt package block")
+                }
+            }
+            position = 0
+        }
+    }
+
+    private class BlockWriter(private val out: DataOutputStream) {
+        private val raw = ByteArray(blockSize)
+        private val compressed = ByteArray(Lz4Block.maxCompressedLength(blockSize))
+        private var length = 0
+
+        fun write(input: InputStream) {
+            while (true) {
+                val read = input.read(raw, length, blockSize - length)
+                if (read < 0) return
+                length += read
+                if (length == blockSize) flush()
+            }
+        }
+
+        fun flush() {
+            if (length == 0) return
+            val compressedLength = Lz4Block.compress(raw, 0, length, compressed, 0)
+            out.writeInt(length)
+            if (compressedLength < length) {
+                out.writeInt(compressedLength)
+                out.write(compressed, 0, compressedLength)
+            } else {
+                out.writeInt(length)
+                out.write(raw, 0, length)
+            }
+            length = 0
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.yausername.youtubedl_common.utils
+
+import android.system.ErrnoException
+import android.system.Os
+import com.yausername.youtubedl_common.utils.HexUtils.hex
+import org.apache.commons.io.FileUtils
+import org.apache.commons.io.IOUtils
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.InputStream
+import java.security.DigestOutputStream
+import java.security.MessageDigest
+import java.util.zip.CRC32
+import java.util.zip.CheckedInputStream
+
+/*
+ * Content addressed store for the shared libraries (the .so files in usr/lib) of the python,
+ * ffmpeg and aria2c packages. Every distinct library is kept once as <size>-<crc32>-<sha256> and
+ * hard linked into each package tree that carries it; a zip entry whose size and crc
+ * match no stored library is known to be new without hashing it first.
+ *
+ * lib/ next to the packages holds one symlink per library name, resolved in package
+ * order, so the dynamic linker finds most libraries in the first directory it searches.
+ */
+class SharedLibraryStore(private val packagesDir: File) {
+    private val storeDir = File(packagesDir, storeDirName)
+
+    fun isLibrary(entryName: String): Boolean {
+        return libraryEntry.matches(entryName)
+    }
+
+    fun install(size: Long, crc: Long, destination: File, stats: ExtractionStats, open: () -> InputStream) {
+        synchronized(lock) {
+            storeDir.mkdirs()
+            val prefix = "$size-${java.lang.Long.toHexString(crc)}-"
+            if (!storeDir.list { _, name -> name.startsWith(prefix) }.isNullOrEmpty()) {
+                val stored = File(storeDir, prefix + open().use { sha256(it) })
+                if (stored.exists()) {
+                    link(stored, destination)
+                    stats.deduplicated(size)
+                    return
+                }
+            }
+            val tmp = File.createTempFile(prefix, tempSuffix, storeDir)
+            val digest = MessageDigest.getInstance("SHA-256")
+            open().use { input ->
+                DigestOutputStream(FileOutputStream(tmp), digest).use { IOUtils.copy(input, it) }
+            }
+            val stored = File(storeDir, prefix + hex(digest.digest()))
+            if (stored.exists()) tmp.delete() else InstallUtils.commit(tmp, stored)
+            link(stored, destination)
+            stats.extracted(size)
+        }
+    }
+
+    /* moves an already extracted library into the store, for formats without a crc up front */
+    fun adopt(file: File, stats: ExtractionStats) {
+        synchronized(lock) {
+            storeDir.mkdirs()
+            val crc = CRC32()
+            val hash = CheckedInputStream(FileInputStream(file), crc).use { sha256(it) }
+            val stored = File(storeDir, "${file.length()}-${java.lang.Long.toHexString(crc.value)}-$hash")
+            if (stored.exists()) {
+                file.delete()
+                stats.deduplicated(stored.length())
+            } else {
+                InstallUtils.commit(file, stored)
+            }
+            link(stored, file)
+        }
+    }
+
+    /* drops libraries no package tree links to anymore */
+    fun collectGarbage() {
+        synchronized(lock) {
+            storeDir.listFiles()?.forEach {
+                if (it.name.endsWith(tempSuffix) || Os.stat(it.absolutePath).st_nlink <= 1) it.delete()
+            }
+        }
+    }
+
+    /*
+     * lib/ is a symlink to a generation directory. The next generation is filled aside and
+     * the symlink renamed over the old one, so a process resolving a library through lib/
+     * never finds it empty or half filled.
+     */
+    fun linkSearchDirectory() {
+        synchronized(lock) {
+            val searchDir = File(packagesDir, searchDirName)
+            val generation = File(packagesDir, "$searchDirName-${System.nanoTime()}")
+            generation.mkdirs()
+            val linked = HashSet<String>()
+            for (packageName in packageOrder) {
+                File(packagesDir, "$packageName/usr/lib").listFiles()?.sortedBy { it.name }?.forEach {
+                    if (isLibrary("usr/lib/${it.name}") && linked.add(it.name)) {
+                        Os.symlink(it.absolutePath, File(generation, it.name).absolutePath)
+                    }
+                }
+            }
+            val next = File(packagesDir, searchDirName + tempSuffix)
+            next.delete()
+            Os.symlink(generation.name, next.absolutePath)
+            if (!next.renameTo(searchDir)) {
+                // lib/ of an older install is a plain directory, which a rename cannot replace
+                FileUtils.deleteQuietly(searchDir)
+                InstallUtils.commit(next, searchDir)
+            }
+            packagesDir.listFiles { _, name -> name.startsWith("$searchDirName-") && name != generation.name }
+                ?.forEach { FileUtils.deleteQuietly(it) }
+        }
+    }
+
+    private fun link(stored: File, destination: File) {
+        destination.parentFile?.mkdirs()
+        try {
+            Os.link(stored.absolutePath, destination.absolutePath)
+        } catch (e: ErrnoException) {
+            FileUtils.copyFile(stored, destination)
+        }
+    }
+
+    private fun sha256(input: InputStream): String {
+        val digest = MessageDigest.getInstance("SHA-256")
+        val buffer = ByteArray(64 * 1024)
+        while (true) {
+            val read = input.read(buffer)
+            if (read < 0) break
+            digest.update(buffer, 0, read)
+        }
+        return hex(digest.digest())
+    }
+
+    companion object {
+        private val lock = Any()
+        private val libraryEntry = Regex("^usr/lib/[^/]+\\.so(\\.[0-9.]+)?$")
+        private const val storeDirName = "shared"
+        private const val tempSuffix = ".tmp"
+        const val searchDirName = "lib"
+
+        /* same precedence as the package library directories in LD_LIBRARY_PATH */
+        val packageOrder = listOf("python", "ffmpeg", "aria2c")
+    }
+}
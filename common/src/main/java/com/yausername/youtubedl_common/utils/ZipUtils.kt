@@ -12,7 +12,40 @@ import java.io.InputStream
 import java.nio.charset.StandardCharsets
 
 object ZipUtils {
+    /*
+     * Extracts a runtime package, either a package archive or a plain zip. Entries the filter
+     * rejects are skipped, directories and symlinks are always created. Shared libraries go
+     * through the store when one is given.
+     */
+    @JvmOverloads
+    fun extract(
+        sourceFile: File,
+        targetDirectory: File,
+        filter: ((String) -> Boolean)? = null,
+        store: SharedLibraryStore? = null
+    ): ExtractionStats {
+        val start = System.currentTimeMillis()
+        val stats = if (PackageArchive.isPackageArchive(sourceFile)) {
+            PackageArchive.extract(sourceFile, targetDirectory, filter = filter, store = store)
+        } else {
+            ExtractionStats().also { unzip(sourceFile, targetDirectory, filter, store, it) }
+        }
+        store?.collectGarbage()
+        stats.elapsedMillis = System.currentTimeMillis() - start
+        return stats
+    }
+
     fun unzip(sourceFile: File?, targetDirectory: File) {
+        unzip(sourceFile, targetDirectory, null, null, ExtractionStats())
+    }
+
+    private fun unzip(
+        sourceFile: File?,
+        targetDirectory: File,
+        filter: ((String) -> Boolean)?,
+        store: SharedLibraryStore?,
+        stats: ExtractionStats
+    ) {
         ZipFile(sourceFile).use { zipFile ->
             val entries = zipFile.entries
             while (entries.hasMoreElements()) {
@@ -29,6 +62,12 @@ object ZipUtils {
                         val symlink = IOUtils.toString(`in`, StandardCharsets.UTF_8)
                         Os.symlink(symlink, entryDestination.absolutePath)
                     }
+                } else if (filter != null && !filter(entry.name)) {
+                    stats.skipped(entry.size)
+                } else if (store != null && store.isLibrary(entry.name)) {
+                    store.install(entry.size, entry.crc, entryDestination, stats) {
+                        zipFile.getInputStream(entry)
+                    }
                 } else {
                     entryDestination.parentFile?.mkdirs()
                     zipFile.getInputStream(entry).use { `in` ->
@@ -39,6 +78,7 @@ object ZipUtils {
                             )
                         }
                     }
+                    stats.extracted(entry.size)
                 }
             }
         }
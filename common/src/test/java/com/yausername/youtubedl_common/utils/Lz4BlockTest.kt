@@ -0,0 +1,150 @@
+package com.yausername.youtubedl_common.utils
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Test
+import java.io.IOException
+import java.util.Random
+
+class Lz4BlockTest {
+    @Test
+    fun emptyInput() {
+        roundTrip(ByteArray(0))
+    }
+
+    @Test
+    fun incompressibleData() {
+        val data = random(64 * 1024)
+        val compressed = roundTrip(data)
+        assertTrue("${compressed.size}", compressed.size <= Lz4Block.maxCompressedLength(data.size))
+    }
+
+    @Test
+    fun longMatches() {
+        val data = ByteArray(1 shl 20) { 'a'.code.toByte() }
+        val compressed = roundTrip(data)
+        assertTrue("${compressed.size}", compressed.size < data.size / 100)
+        // a random chunk repeated, matched at an offset of its length
+        val chunk = random(1000)
+        roundTrip(ByteArray(100 * 1000) { chunk[it % 1000] })
+    }
+
+    @Test
+    fun overlappingCopies() {
+        // offsets shorter than the match repeat the last offset bytes
+        for (period in 1..8) {
+            val pattern = random(period)
+            roundTrip(ByteArray(5000) { pattern[it % period] })
+        }
+    }
+
+    @Test
+    fun blockBoundarySizes() {
+        val sizes = (0..20) + listOf(254, 255, 256, 269, 270, 271, 65535, 65536, 65537, (1 shl 20) - 1, 1 shl 20)
+        for (size in sizes) roundTrip(mixed(size))
+    }
+
+    @Test
+    fun offsetsInsideLargerArrays() {
+        val data = mixed(10000)
+        val src = ByteArray(data.size + 7).also { System.arraycopy(data, 0, it, 3, data.size) }
+        val compressed = ByteArray(Lz4Block.maxCompressedLength(data.size) + 5)
+        val compressedLength = Lz4Block.compress(src, 3, data.size, compressed, 5)
+        val dst = ByteArray(data.size + 20)
+        assertEquals(data.size, Lz4Block.decompress(compressed, 5, compressedLength, dst, 10, data.size))
+        assertArrayEquals(data, dst.copyOfRange(10, 10 + data.size))
+    }
+
+    @Test
+    fun truncatedBlocksAreRejected() {
+        val data = mixed(5000)
+        val compressed = compress(data)
+        for (length in 0 until compressed.size) {
+            // the rest of the block stays in the array, where a decoder reading past srcLen would find it
+            val decoded = decodeGuarded(compressed, length, data.size)
+            assertTrue("truncated to $length decoded ${decoded?.size}", decoded == null || decoded.size < data.size)
+        }
+    }
+
+    @Test
+    fun matchesOutsideTheOutputAreRejected() {
+        // offset 0
+        assertRejected(byteArrayOf(0x10, 'a'.code.toByte(), 0, 0, 0x00), 16)
+        // offset reaching before the output
+        assertRejected(byteArrayOf(0x10, 'a'.code.toByte(), 2, 0, 0x00), 16)
+        // literals longer than the block
+        assertRejected(byteArrayOf(0x50, 'a'.code.toByte()), 16)
+        // literal length extension cut off
+        assertRejected(byteArrayOf(0xF0.toByte(), 255.toByte()), 1000)
+        // match longer than the output
+        assertRejected(byteArrayOf(0x1F, 'a'.code.toByte(), 1, 0, 100, 0x00), 16)
+    }
+
+    @Test
+    fun smallerOutputIsRejected() {
+        val data = mixed(5000)
+        val compressed = compress(data)
+        for (dstLength in listOf(0, 1, data.size / 2, data.size - 1)) {
+            val decoded = decodeGuarded(compressed, compressed.size, dstLength)
+            assertTrue("into $dstLength decoded ${decoded?.size}", decoded == null)
+        }
+    }
+
+    @Test
+    fun randomInputNeverWritesOutOfBounds() {
+        val random = Random(7)
+        repeat(20000) {
+            val block = ByteArray(1 + random.nextInt(64)).also { random.nextBytes(it) }
+            decodeGuarded(block, block.size, random.nextInt(128))
+        }
+    }
+
+    private fun roundTrip(data: ByteArray): ByteArray {
+        val compressed = compress(data)
+        val decoded = decodeGuarded(compressed, compressed.size, data.size)
+        assertArrayEquals("size ${data.size}", data, decoded)
+        return compressed
+    }
+
+    private fun compress(data: ByteArray): ByteArray {
+        val compressed = ByteArray(Lz4Block.maxCompressedLength(data.size))
+        return compressed.copyOf(Lz4Block.compress(data, 0, data.size, compressed, 0))
+    }
+
+    /* what was decoded, null when the block was rejected; fails if bytes around the output changed */
+    private fun decodeGuarded(src: ByteArray, srcLength: Int, dstLength: Int): ByteArray? {
+        val dst = ByteArray(guard + dstLength + guard) { guardByte }
+        val decoded = try {
+            Lz4Block.decompress(src, 0, srcLength, dst, guard, dstLength)
+        } catch (e: IOException) {
+            null
+        }
+        for (i in 0 until guard) {
+            assertEquals(guardByte.toLong(), dst[i].toLong())
+            assertEquals(guardByte.toLong(), dst[guard + dstLength + i].toLong())
+        }
+        return decoded?.let { dst.copyOfRange(guard, guard + it) }
+    }
+
+    private fun assertRejected(block: ByteArray, dstLength: Int) {
+        if (decodeGuarded(block, block.size, dstLength) != null) fail("accepted ${block.toList()}")
+    }
+
+    private fun random(size: Int): ByteArray {
+        return ByteArray(size).also { Random(size.toLong()).nextBytes(it) }
+    }
+
+    /* half random, half repetitive */
+    private fun mixed(size: Int): ByteArray {
+        val data = random(size)
+        data.fill('a'.code.toByte(), size / 2, size)
+        return data
+    }
+
+    companion object {
+        private const val guard = 64
+        private const val guardByte: Byte = 0x5A
+    }
+}
@@ -0,0 +1,153 @@
+package com.yausername.youtubedl_common.utils
+
+import org.apache.commons.compress.archivers.zip.UnixStat
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream
+import org.apache.commons.compress.archivers.zip.ZipFile
+import org.apache.commons.io.FileUtils
+import org.apache.commons.io.IOUtils
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.LinkOption
+import java.nio.file.Paths
+import java.nio.file.attribute.PosixFilePermissions
+import java.util.Random
+
+class PackageArchiveTest {
+    private lateinit var dir: File
+    private lateinit var zip: File
+    private lateinit var archive: File
+    private val symlink = PackageArchive.symlink
+
+    @Before
+    fun setUp() {
+        dir = Files.createTempDirectory("package-archive").toFile()
+        zip = File(dir, "runtime.zip")
+        archive = File(dir, "runtime.pkg")
+        PackageArchive.symlink = { target, path -> Files.createSymbolicLink(Paths.get(path), Paths.get(target)) }
+        writeZip()
+        PackageArchive.repack(zip, archive)
+    }
+
+    @After
+    fun tearDown() {
+        PackageArchive.symlink = symlink
+        FileUtils.deleteQuietly(dir)
+    }
+
+    @Test
+    fun extractsWhatTheZipHolds() {
+        assertTrue(PackageArchive.isPackageArchive(archive))
+        assertFalse(PackageArchive.isPackageArchive(zip))
+        for (threads in listOf(1, 4)) {
+            val target = File(dir, "extracted-$threads")
+            val stats = PackageArchive.extract(archive, target, threads)
+            assertEquals(files.size.toLong(), stats.extractedFiles.toLong())
+            assertMatchesZip(target) { true }
+        }
+    }
+
+    @Test
+    fun skipsFilteredFiles() {
+        val target = File(dir, "filtered")
+        val taken = { name: String -> !name.startsWith("usr/lib/small") }
+        val stats = PackageArchive.extract(archive, target, 4, taken)
+        assertTrue(stats.skippedFiles > 0)
+        assertMatchesZip(target, taken)
+        assertFalse(File(target, "usr/lib/small_0.py").exists())
+    }
+
+    @Test
+    fun copiesFilteredFilesToZip() {
+        val copy = File(dir, "copy.zip")
+        PackageArchive.copyToZip(archive, copy) { it.endsWith(".so") }
+        ZipFile(copy).use { zipFile ->
+            val names = zipFile.entries.toList().map { it.name }
+            assertEquals(files.keys.filter { it.endsWith(".so") }, names)
+            for (name in names) {
+                val copied = zipFile.getInputStream(zipFile.getEntry(name)).use { IOUtils.toByteArray(it) }
+                assertArrayEquals(name, files[name]!!.second, copied)
+            }
+        }
+    }
+
+    private fun assertMatchesZip(target: File, taken: (String) -> Boolean) {
+        for ((name, file) in files) {
+            val extracted = File(target, name)
+            if (!taken(name)) continue
+            assertArrayEquals(name, file.second, FileUtils.readFileToByteArray(extracted))
+            val permissions = Files.getPosixFilePermissions(extracted.toPath(), LinkOption.NOFOLLOW_LINKS)
+            assertEquals(name, permissionString(file.first), PosixFilePermissions.toString(permissions))
+        }
+        for ((name, linkTarget) in symlinks) {
+            val link = File(target, name).toPath()
+            assertTrue(name, Files.isSymbolicLink(link))
+            assertEquals(name, linkTarget, Files.readSymbolicLink(link).toString())
+        }
+        for (name in directories) assertTrue(name, File(target, name).isDirectory)
+    }
+
+    private fun writeZip() {
+        ZipArchiveOutputStream(zip).use { out ->
+            for (name in directories) {
+                out.putArchiveEntry(ZipArchiveEntry(name))
+                out.closeArchiveEntry()
+            }
+            for ((name, file) in files) {
+                out.putArchiveEntry(ZipArchiveEntry(name).apply { unixMode = UnixStat.FILE_FLAG or file.first })
+                out.write(file.second)
+                out.closeArchiveEntry()
+            }
+            for ((name, linkTarget) in symlinks) {
+                out.putArchiveEntry(ZipArchiveEntry(name).apply { unixMode = UnixStat.LINK_FLAG or 0x1FF })
+                out.write(linkTarget.toByteArray(StandardCharsets.UTF_8))
+                out.closeArchiveEntry()
+            }
+        }
+    }
+
+    private fun permissionString(mode: Int): String {
+        val letters = "rwxrwxrwx"
+        return String(CharArray(9) { if (mode and (0x100 shr it) != 0) letters[it] else '-' })
+    }
+
+    companion object {
+        private const val blockSize = 1 shl 20
+
+        private val directories = listOf("usr/", "usr/bin/", "usr/lib/", "usr/lib/empty/")
+
+        // name to mode and content: files spanning blocks, ending on a block boundary, empty ones between
+        private val files: Map<String, Pair<Int, ByteArray>> = LinkedHashMap<String, Pair<Int, ByteArray>>().apply {
+            put("usr/bin/python3", 0x1ED to content(100_000, 1))
+            put("usr/lib/libpython.so", 0x1ED to content(blockSize + 12_345, 2))
+            put("usr/lib/empty.py", 0x1A4 to ByteArray(0))
+            // ends where the second block does
+            put("usr/lib/boundary.bin", 0x1A4 to content(blockSize - 112_345, 3))
+            put("usr/lib/empty_too.py", 0x1A4 to ByteArray(0))
+            for (i in 0 until 300) put("usr/lib/small_$i.py", 0x1A4 to content(5_000 + i, 10L + i))
+            put("usr/lib/private.key", 0x180 to content(3 * blockSize + 1, 4))
+            put("usr/etc/tls/cert.pem", 0x1A4 to "stub".toByteArray())
+        }
+
+        private val symlinks = mapOf(
+            "usr/bin/python" to "python3",
+            "usr/lib/libpython3.so" to "libpython.so"
+        )
+
+        /* half random, half repetitive, so that blocks compress but not to nothing */
+        private fun content(size: Int, seed: Long): ByteArray {
+            val data = ByteArray(size)
+            Random(seed).nextBytes(data)
+            data.fill('a'.code.toByte(), size / 2, size)
+            return data
+        }
+    }
+}
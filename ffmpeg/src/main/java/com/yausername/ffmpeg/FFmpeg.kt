@@ -4,7 +4,8 @@ import android.content.Context
 import com.yausername.youtubedl_android.YoutubeDLException
 import com.yausername.youtubedl_common.SharedPrefsHelper
 import com.yausername.youtubedl_common.SharedPrefsHelper.update
-import com.yausername.youtubedl_common.utils.ZipUtils.unzip
+import com.yausername.youtubedl_common.utils.SharedLibraryStore
+import com.yausername.youtubedl_common.utils.ZipUtils.extract
 import org.apache.commons.io.FileUtils
 import java.io.File
 
@@ -32,7 +33,9 @@ object FFmpeg {
             FileUtils.deleteQuietly(ffmpegDir)
             ffmpegDir.mkdirs()
             try {
-                unzip(ffmpegLib, ffmpegDir)
+                val store = SharedLibraryStore(ffmpegDir.parentFile!!)
+                extract(ffmpegLib, ffmpegDir, store = store)
+                store.linkSearchDirectory()
             } catch (e: Exception) {
                 FileUtils.deleteQuietly(ffmpegDir)
                 throw YoutubeDLException("failed to initialize", e)
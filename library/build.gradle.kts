@@ -46,4 +46,8 @@ dependencies {
     implementation("com.fasterxml.jackson.core:jackson-databind:${rootProject.extra["jacksonVer"]}")
     implementation("com.fasterxml.jackson.core:jackson-annotations:${rootProject.extra["jacksonVer"]}")
     implementation("commons-io:commons-io:${rootProject.extra["commonsIoVer"]}")
+    api("org.jetbrains.kotlinx:kotlinx-coroutines-core:${rootProject.extra["coroutinesVer"]}")
+    api("org.reactivestreams:reactive-streams:${rootProject.extra["reactiveStreamsVer"]}")
+    // YoutubeDLRx is only usable when the app brings RxJava 2 itself
+    compileOnly("io.reactivex.rxjava2:rxjava:${rootProject.extra["rxJava2Ver"]}")
 }
@@ -0,0 +1,133 @@
+package com.yausername.youtubedl_android
+
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+
+/*
+ * Splits YoutubeDL.bandwidthBudget between the downloads running at once, weighted by QoS,
+ * and hands each launch its share as --limit-rate. yt-dlp cannot change the rate of a running
+ * download, so a rebalance relaunches it with --continue: one taking well above its share
+ * since others started, or one held well below its share since others finished. A download
+ * running slower than its limit on its own keeps only what it uses, the rest goes to the
+ * others. Requests that set their own --limit-rate or download nothing are left alone.
+ */
+internal object BandwidthManager {
+    private const val rebalancePeriodMillis = 2000L
+    // a relaunch extracts again, not worth it more often or for what finishes soon anyway
+    private const val minRelaunchMillis = 15000L
+    private const val minRelaunchEtaSeconds = 30L
+    private const val minRate = 16 * 1024L
+    private val allocations = LinkedHashMap<YoutubeDLJob, Allocation>()
+    private var rebalancing: ScheduledFuture<*>? = null
+
+    private class Allocation(val weight: Int, val rate: Long) {
+        val launchedAt = System.currentTimeMillis()
+        /* null for executions that cannot be relaunched, streams */
+        var execution: YoutubeDLExecution? = null
+    }
+
+    /* the --limit-rate for a launch of job, after which release must be called */
+    fun options(request: YoutubeDLRequest, job: YoutubeDLJob): List<String> {
+        val budget = YoutubeDL.bandwidthBudget
+        if (budget <= 0 || request.hasOption("--limit-rate") || request.hasOption("-r")) return emptyList()
+        if (downloadsNothing(request)) return emptyList()
+        synchronized(allocations) {
+            val weight = weight(job.qos)
+            val shares = shares(budget, job to weight)
+            val rate = shares.getValue(job)
+            allocations[job] = Allocation(weight, rate)
+            job.rateLimit = rate
+            if (rebalancing == null) {
+                rebalancing = ExecutionWatchdog.executor.scheduleWithFixedDelay(
+                    { rebalance() }, rebalancePeriodMillis, rebalancePeriodMillis, TimeUnit.MILLISECONDS
+                )
+            }
+            return listOf("--limit-rate", rate.toString())
+        }
+    }
+
+    /* makes the execution of job one that a rebalance may relaunch */
+    fun attach(job: YoutubeDLJob, execution: YoutubeDLExecution) {
+        synchronized(allocations) {
+            allocations[job]?.execution = execution
+        }
+    }
+
+    fun release(job: YoutubeDLJob) {
+        synchronized(allocations) {
+            allocations.remove(job) ?: return
+            job.rateLimit = 0
+            if (allocations.isEmpty()) {
+                rebalancing?.cancel(false)
+                rebalancing = null
+            }
+        }
+    }
+
+    private fun rebalance() {
+        val budget = YoutubeDL.bandwidthBudget
+        if (budget <= 0) return
+        val relaunch = synchronized(allocations) {
+            val shares = shares(budget, null)
+            val now = System.currentTimeMillis()
+            allocations.filter { (job, allocation) ->
+                val share = shares[job] ?: return@filter false
+                val speed = job.speedBytesPerSecond
+                allocation.execution != null && now - allocation.launchedAt >= minRelaunchMillis && speed >= 0 &&
+                        job.etaInSeconds > minRelaunchEtaSeconds &&
+                        // using more than its share, or capped by us far below it
+                        (allocation.rate > share * 3 / 2 && speed > share * 11 / 10 ||
+                                allocation.rate < share * 2 / 3 && speed >= allocation.rate * 4 / 5)
+            }.values.mapNotNull { it.execution }
+        }
+        for (execution in relaunch) execution.relimit()
+    }
+
+    /*
+     * budget divided over the unpaused allocations and added, by weight, with what downloads
+     * slower than their limit leave unused going to the others
+     */
+    private fun shares(budget: Long, added: Pair<YoutubeDLJob, Int>?): Map<YoutubeDLJob, Long> {
+        val pending = allocations.filter { !it.key.isPaused }
+            .mapValuesTo(LinkedHashMap()) { (job, allocation) -> allocation.weight to demand(job, allocation) }
+        if (added != null) pending[added.first] = added.second to Long.MAX_VALUE
+        val shares = HashMap<YoutubeDLJob, Long>()
+        var remaining = budget
+        while (pending.isNotEmpty()) {
+            val weights = pending.values.sumOf { it.first }
+            val satisfied = pending.filter { (_, entry) -> entry.second < remaining * entry.first / weights }
+            if (satisfied.isEmpty()) {
+                for ((job, entry) in pending) shares[job] = maxOf(minRate, remaining * entry.first / weights)
+                break
+            }
+            for ((job, entry) in satisfied) {
+                shares[job] = maxOf(minRate, entry.second)
+                remaining -= entry.second
+                pending.remove(job)
+            }
+        }
+        return shares
+    }
+
+    /* what a download would use, unbounded unless it runs clearly below its limit */
+    private fun demand(job: YoutubeDLJob, allocation: Allocation): Long {
+        val speed = job.speedBytesPerSecond
+        if (speed < 0 || speed >= allocation.rate * 4 / 5) return Long.MAX_VALUE
+        return speed * 5 / 4
+    }
+
+    private fun weight(qos: YoutubeDLRequest.QoS): Int {
+        return when (qos) {
+            YoutubeDLRequest.QoS.INTERACTIVE -> 4
+            YoutubeDLRequest.QoS.DEFAULT -> 2
+            YoutubeDLRequest.QoS.BACKGROUND -> 1
+        }
+    }
+
+    private fun downloadsNothing(request: YoutubeDLRequest): Boolean {
+        return listOf(
+            "--simulate", "-s", "--skip-download", "--dump-json", "-j", "--dump-single-json", "-J",
+            "--flat-playlist", "--get-url", "-g"
+        ).any { request.hasOption(it) }
+    }
+}
@@ -0,0 +1,92 @@
+package com.yausername.youtubedl_android
+
+import java.io.File
+import java.io.FileInputStream
+import java.io.InputStreamReader
+import java.io.Reader
+import java.io.StringReader
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.atomic.AtomicInteger
+
+/*
+ * What an OutputSink kept of one output stream of an execution, in memory or in a file.
+ * length counts every char yt-dlp printed, including those the sink did not keep.
+ */
+abstract class CapturedOutput internal constructor(val length: Long) {
+    /* the file holding the output, null when it is held in memory or was not kept */
+    abstract val file: File?
+
+    abstract fun reader(): Reader
+
+    open fun text(): String {
+        return reader().use { it.readText() }
+    }
+
+    /* deletes the file the output spilled to, files given to OutputSink.file are left alone */
+    internal open fun discard() {}
+
+    internal class InMemory(private val chars: CharSequence, length: Long) : CapturedOutput(length) {
+        override val file: File? = null
+
+        override fun reader(): Reader {
+            return StringReader(chars.toString())
+        }
+
+        override fun text(): String {
+            return chars.toString()
+        }
+    }
+
+    internal class InFile(
+        override val file: File,
+        length: Long,
+        private val temporary: Boolean
+    ) : CapturedOutput(length) {
+        @Volatile
+        private var discarded = false
+
+        override fun reader(): Reader {
+            check(!discarded) { "the output spilled to $file, which was deleted when the response was closed" }
+            return InputStreamReader(FileInputStream(file), StandardCharsets.UTF_8)
+        }
+
+        override fun discard() {
+            if (!temporary) return
+            discarded = true
+            file.delete()
+        }
+    }
+
+    /* one of holders responses to the same output, the last to be closed discards it */
+    internal class Shared(private val output: CapturedOutput, private val holders: AtomicInteger) :
+        CapturedOutput(output.length) {
+        @Volatile
+        private var discarded = false
+
+        override val file: File?
+            get() = output.file
+
+        override fun reader(): Reader {
+            check(!discarded || output.file == null) { "the response was closed" }
+            return output.reader()
+        }
+
+        override fun text(): String {
+            check(!discarded || output.file == null) { "the response was closed" }
+            return output.text()
+        }
+
+        @Synchronized
+        override fun discard() {
+            if (discarded) return
+            discarded = true
+            if (holders.decrementAndGet() == 0) output.discard()
+        }
+    }
+
+    companion object {
+        internal fun of(text: String): CapturedOutput {
+            return InMemory(text, text.length.toLong())
+        }
+    }
+}
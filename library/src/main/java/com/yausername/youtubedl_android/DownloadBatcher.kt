@@ -0,0 +1,188 @@
+package com.yausername.youtubedl_android
+
+import android.util.Log
+import java.io.File
+import java.io.IOException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.regex.Pattern
+
+/*
+ * Collects the single-url requests passed to YoutubeDL.executeBatched that have the same
+ * options for batchWindowMillis and downloads them with one yt-dlp process, so that many
+ * short items do not each pay for starting the interpreter. The "Extracting URL:" line yt-dlp
+ * prints as it moves on to the next url says which item the lines after it belong to, and
+ * --print-to-file after_move lists the items that were downloaded. Items the batch did not
+ * download run on their own in their caller's thread, which gets their own error and retries
+ * right, as does a batch of one.
+ */
+internal object DownloadBatcher {
+    private val open = HashMap<String, Batch>()
+    private val runner: ExecutorService = Executors.newCachedThreadPool { runnable ->
+        Thread(runnable, "yt-dlp-batch").apply { isDaemon = true }
+    }
+    private val extracting = Pattern.compile("Extracting URL: (\\S+)")
+    private const val completedTemplate = "after_move:%(original_url)s"
+    private val TAG = DownloadBatcher::class.java.simpleName
+
+    private class Batch(val key: String, val template: YoutubeDLRequest) {
+        val items = ArrayList<Item>()
+        var closed = false
+    }
+
+    private class Item(
+        val request: YoutubeDLRequest,
+        val url: String,
+        val job: YoutubeDLJob,
+        val callback: ((Float, Long, String) -> Unit)?
+    ) {
+        val done = CountDownLatch(1)
+        val out = StringBuilder()
+        var progress = -1f
+        var etaInSeconds = -1L
+        var response: YoutubeDLResponse? = null
+        // neither set once done: run on its own
+        var cancelled = false
+
+        fun line(progress: Float, etaInSeconds: Long, line: String) {
+            out.append(line).append('\n')
+            if (line.startsWith("[download]") && line.contains('%') || line.startsWith("[#")) {
+                this.progress = progress
+                this.etaInSeconds = etaInSeconds
+                job.progress(progress, etaInSeconds)
+            }
+            callback?.invoke(this.progress, this.etaInSeconds, line)
+        }
+
+        fun complete(response: YoutubeDLResponse?, cancelled: Boolean) {
+            synchronized(this) {
+                if (done.count == 0L) return
+                this.response = response
+                this.cancelled = cancelled
+            }
+            done.countDown()
+        }
+    }
+
+    /*
+     * null when request cannot be batched: several urls, its own sinks, output that hides progress.
+     * The stall settings are the batch's own, the others only apply to items on their own.
+     */
+    fun key(request: YoutubeDLRequest): String? {
+        if (request.urls.size != 1 || !request.outSink.shareable || !request.errSink.shareable) return null
+        if (quietOptions.any { request.hasOption(it) }) return null
+        return "${request.qos} ${request.stallTimeoutMillis} ${request.maxStallRestarts}\n${request.optionsFingerprint()}"
+    }
+
+    @Throws(YoutubeDLException::class, InterruptedException::class, YoutubeDL.CanceledException::class)
+    fun execute(
+        key: String,
+        request: YoutubeDLRequest,
+        processId: String?,
+        callback: ((Float, Long, String) -> Unit)?
+    ): YoutubeDLResponse {
+        val job = JobRegistry.register(processId, request)
+        val item = Item(request, request.urls.first().trim(), job, callback)
+        try {
+            val (batch, full) = synchronized(open) {
+                val batch = open[key]?.takeIf { !it.closed } ?: Batch(key, request).also {
+                    open[key] = it
+                    ExecutionWatchdog.executor.schedule({ close(it) }, YoutubeDL.batchWindowMillis, TimeUnit.MILLISECONDS)
+                }
+                batch.items.add(item)
+                batch to (batch.items.size >= YoutubeDL.maxBatchSize)
+            }
+            if (full) close(batch)
+            job.cancelListener = { abandon(batch, item) }
+            if (job.isCancelled) abandon(batch, item)
+            try {
+                item.done.await()
+            } catch (e: InterruptedException) {
+                abandon(batch, item)
+                throw e
+            }
+            if (item.cancelled) throw YoutubeDL.CanceledException()
+            item.response?.let { return it }
+        } finally {
+            JobRegistry.unregister(job)
+        }
+        return YoutubeDL.execute(request, processId, callback)
+    }
+
+    private fun close(batch: Batch) {
+        synchronized(open) {
+            if (batch.closed) return
+            batch.closed = true
+            open.remove(batch.key, batch)
+        }
+        runner.execute { run(batch) }
+    }
+
+    /* an item that is downloading already is downloaded, but no longer waited for */
+    private fun abandon(batch: Batch, item: Item) {
+        synchronized(open) {
+            if (!batch.closed) batch.items.remove(item)
+        }
+        item.complete(null, true)
+    }
+
+    private fun run(batch: Batch) {
+        val items = synchronized(open) { batch.items.filter { it.done.count > 0 } }
+        if (items.size <= 1) {
+            items.forEach { it.complete(null, false) }
+            return
+        }
+        val byUrl = items.associateBy { it.url }
+        try {
+            val dir = YoutubeDL.outputDir!!.apply { mkdirs() }
+            val list = File.createTempFile("batch", ".txt", dir)
+            try {
+                // an item's tags are on its own job, its timeout and retries on its run on its own
+                val request = batch.template.copy(items.map { it.url }, withTags = false)
+                    .apply {
+                        timeoutMillis = 0
+                        retryPolicy = RetryPolicy.NONE
+                        singleFlight = false
+                    }
+                    .addOption("--ignore-errors")
+                    .addCommands(listOf("--print-to-file", completedTemplate, list.absolutePath))
+                val command = request.buildCommand()
+                var current: Item? = null
+                val started = System.currentTimeMillis()
+                try {
+                    YoutubeDL.execute(request, null) { progress, etaInSeconds, line ->
+                        val matcher = extracting.matcher(line)
+                        if (matcher.find()) byUrl[matcher.group(1)]?.let { current = it }
+                        current?.line(progress, etaInSeconds, line)
+                    }.close()
+                } catch (e: YoutubeDLException) {
+                    // some of the items failed, the others are in the list
+                } catch (e: YoutubeDL.CanceledException) {
+                }
+                val completed = list.readLines().toSet()
+                val elapsedTime = System.currentTimeMillis() - started
+                for (item in items) {
+                    if (item.url !in completed) continue
+                    item.complete(YoutubeDLResponse(command, 0, elapsedTime, item.out.toString(), ""), false)
+                }
+            } finally {
+                list.delete()
+            }
+        } catch (e: IOException) {
+            // without the list nothing counts as downloaded
+            Log.e(TAG, "failed to create the list of downloaded items", e)
+        } catch (e: InterruptedException) {
+        } finally {
+            // whatever is left runs on its own
+            for (item in items) item.complete(null, false)
+        }
+    }
+
+    // options that imply --quiet, leaving no "Extracting URL:" lines to go by, and the one the batch adds
+    private val quietOptions = listOf(
+        "--quiet", "-q", "--dump-json", "-j", "--dump-single-json", "-J", "--print", "-O", "--print-to-file",
+        "--get-url", "-g", "--get-title", "-e", "--get-id", "--get-filename", "--get-format"
+    )
+}
@@ -0,0 +1,23 @@
+package com.yausername.youtubedl_android
+
+class DownloadStats internal constructor() {
+    var bytes = 0L
+        internal set
+    var resumedBytes = 0L
+        internal set
+    var attempts = 0
+        internal set
+    var elapsedMillis = 0L
+        internal set
+    var verified = false
+        internal set
+
+    /* bytes transferred in this download, not counting what a previous one left on disk */
+    val bytesPerSecond: Long
+        get() = if (elapsedMillis == 0L) 0 else bytes * 1000 / elapsedMillis
+
+    override fun toString(): String {
+        return "downloaded $bytes bytes in $elapsedMillis ms ($bytesPerSecond B/s) in $attempts attempts, " +
+                "resumed $resumedBytes bytes, ${if (verified) "verified" else "not verified"}"
+    }
+}
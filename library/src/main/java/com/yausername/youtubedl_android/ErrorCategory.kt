@@ -0,0 +1,60 @@
+package com.yausername.youtubedl_android
+
+import java.util.regex.Pattern
+
+/*
+ * What a failed execution ran into, as told by yt-dlp's stderr. transient failures may
+ * succeed when launched again later, the others will fail the same way.
+ */
+enum class ErrorCategory(val transient: Boolean) {
+    RATE_LIMITED(true),
+    SERVER_ERROR(true),
+    NETWORK(true),
+    FRAGMENT(true),
+    // expired signed urls, a relaunch extracts fresh ones
+    FORBIDDEN(true),
+    UNAVAILABLE(false),
+    // the video is there, none of its formats matches the format selection
+    FORMAT_UNAVAILABLE(false),
+    // the server's certificate does not verify, relaunching will not change it
+    CERTIFICATE(false),
+    LOGIN_REQUIRED(false),
+    UNSUPPORTED_URL(false),
+    INVALID_OPTIONS(false),
+    NO_SPACE(false),
+    UNKNOWN(false);
+
+    companion object {
+        // permanent causes first: "Private video. Sign in if you've been granted access" is unavailable
+        private val patterns = listOf(
+            UNSUPPORTED_URL to "Unsupported URL|is not a valid URL",
+            INVALID_OPTIONS to "yt-dlp: error:|no such option|Usage:",
+            NO_SPACE to "No space left on device",
+            FORMAT_UNAVAILABLE to "Requested format is not available|No video formats found",
+            CERTIFICATE to "CERTIFICATE_VERIFY_FAILED|certificate verify failed|self.signed certificate",
+            UNAVAILABLE to "Private video|Video unavailable|has been removed|is not available|" +
+                    "not available in your country|members-only|HTTP Error 404|HTTP Error 410",
+            LOGIN_REQUIRED to "Sign in to confirm|login required|requires authentication|Use --cookies",
+            RATE_LIMITED to "HTTP Error 429|Too Many Requests|rate.?limit",
+            SERVER_ERROR to "HTTP Error 5\\d\\d",
+            FORBIDDEN to "HTTP Error 403",
+            FRAGMENT to "fragment|Did not get any data blocks",
+            NETWORK to "timed out|Connection reset|Connection refused|Connection aborted|" +
+                    "Remote end closed|Network is unreachable|name resolution|Name or service not known|" +
+                    "IncompleteRead|urlopen error|UNEXPECTED_EOF|EOF occurred in violation of protocol"
+        ).map { (category, regex) -> category to Pattern.compile(regex, Pattern.CASE_INSENSITIVE) }
+
+        /* looks at the ERROR lines from the last one up, then at the rest of stderr */
+        @JvmStatic
+        fun classify(stderr: String): ErrorCategory {
+            val lines = stderr.lines()
+            val errors = lines.filter { it.startsWith("ERROR:") || it.startsWith("yt-dlp: error:") }.asReversed()
+            for (line in errors + stderr) {
+                for ((category, pattern) in patterns) {
+                    if (pattern.matcher(line).find()) return category
+                }
+            }
+            return UNKNOWN
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.yausername.youtubedl_android
+
+sealed class ExecutionEvent {
+    /* a line yt-dlp wrote to stdout, or a \r-terminated progress update */
+    class Output(val line: String) : ExecutionEvent()
+
+    /* emitted when a line moves the progress or eta, both are -1 until yt-dlp reports them */
+    class Progress(val progress: Float, val etaInSeconds: Long) : ExecutionEvent()
+
+    class Completed(val response: YoutubeDLResponse) : ExecutionEvent()
+}
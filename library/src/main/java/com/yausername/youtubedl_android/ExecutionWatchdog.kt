@@ -0,0 +1,27 @@
+package com.yausername.youtubedl_android
+
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.ScheduledThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+
+/*
+ * checks executions against their request's timeoutMillis and stallTimeoutMillis on one thread,
+ * which BandwidthManager shares
+ */
+internal object ExecutionWatchdog {
+    val executor = ScheduledThreadPoolExecutor(1) { runnable ->
+        Thread(runnable, "yt-dlp-watchdog").apply { isDaemon = true }
+    }.apply { removeOnCancelPolicy = true }
+
+    /* null when the request has no timeouts */
+    fun watch(execution: YoutubeDLExecution): ScheduledFuture<*>? {
+        val request = execution.request
+        val shortest = listOf(request.timeoutMillis, request.stallTimeoutMillis).filter { it > 0 }.minOrNull()
+            ?: return null
+        val period = (shortest / 4).coerceIn(minPeriodMillis, maxPeriodMillis)
+        return executor.scheduleWithFixedDelay({ execution.checkTimeouts() }, period, period, TimeUnit.MILLISECONDS)
+    }
+
+    private const val minPeriodMillis = 50L
+    private const val maxPeriodMillis = 1000L
+}
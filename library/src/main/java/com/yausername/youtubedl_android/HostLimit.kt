@@ -0,0 +1,13 @@
+package com.yausername.youtubedl_android
+
+/*
+ * The throttling in effect for one host, see YoutubeDL.hostLimits. concurrencyLimit is
+ * Int.MAX_VALUE while the host is not limited.
+ */
+class HostLimit internal constructor(
+    val host: String,
+    val concurrencyLimit: Int,
+    val running: Int,
+    val sleepSeconds: Int,
+    val rateLimitSignals: Long
+)
@@ -0,0 +1,121 @@
+package com.yausername.youtubedl_android
+
+import java.net.URI
+import java.net.URISyntaxException
+import java.util.regex.Pattern
+
+/*
+ * Concurrency limits per host, adjusted AIMD style from the 429s yt-dlp reports. A host
+ * starts unlimited. An execution that saw a 429 and was launched after the last decrease
+ * halves the number of executions allowed to run against it and doubles the
+ * --sleep-requests/--sleep-interval added to new launches.
+ * Each clean execution then raises the limit by 1/limit and shortens the sleep by a second,
+ * until the host is back where it was throttled and unlimited again.
+ */
+internal object HostLimiter {
+    const val pollMillis = 100L
+    private const val maxSleepSeconds = 30
+    private val rateLimited = Pattern.compile("HTTP Error 429|Too Many Requests", Pattern.CASE_INSENSITIVE)
+    private val hosts = HashMap<String, Host>()
+
+    private class Host {
+        var limit = Double.POSITIVE_INFINITY
+        var ceiling = 0
+        var running = 0
+        var sleepSeconds = 0
+        var signals = 0L
+        // the executions running when a 429 arrives all report it, one decrease covers them
+        var epoch = 0
+    }
+
+    /* a running slot on host, null for requests without a url */
+    class Permit internal constructor(internal val host: String?, internal val epoch: Int) {
+        internal var observed = false
+        internal var throttled = false
+        private var released = false
+
+        /* called with the end of stderr once the execution is done */
+        fun observe(stderr: String) {
+            observed = true
+            throttled = rateLimited.matcher(stderr).find()
+        }
+
+        fun release() {
+            if (released) return
+            released = true
+            release(this)
+        }
+    }
+
+    /* null while the host is at its limit */
+    fun tryAcquire(request: YoutubeDLRequest): Permit? {
+        val key = key(request) ?: return Permit(null, 0)
+        synchronized(hosts) {
+            val host = hosts.getOrPut(key) { Host() }
+            if (host.running >= host.limit) return null
+            host.running++
+            return Permit(key, host.epoch)
+        }
+    }
+
+    /* the sleep options for a launch, unless the request sets its own */
+    fun options(request: YoutubeDLRequest, permit: Permit): List<String> {
+        val key = permit.host ?: return emptyList()
+        if (request.hasOption("--sleep-requests") || request.hasOption("--sleep-interval")) return emptyList()
+        val seconds = synchronized(hosts) { hosts[key]?.sleepSeconds ?: 0 }
+        if (seconds == 0) return emptyList()
+        return listOf("--sleep-requests", seconds.toString(), "--sleep-interval", seconds.toString())
+    }
+
+    fun limits(): List<HostLimit> {
+        synchronized(hosts) {
+            return hosts.map { (key, host) ->
+                val limit = if (host.limit.isInfinite()) Int.MAX_VALUE else host.limit.toInt()
+                HostLimit(key, limit, host.running, host.sleepSeconds, host.signals)
+            }
+        }
+    }
+
+    private fun release(permit: Permit) {
+        val key = permit.host ?: return
+        synchronized(hosts) {
+            val host = hosts[key] ?: return
+            host.running--
+            // cancelled or never started, says nothing about the host
+            if (!permit.observed) return
+            if (permit.throttled) {
+                host.signals++
+                if (permit.epoch != host.epoch) return
+                host.epoch++
+                val current = minOf(host.limit, (host.running + 1).toDouble())
+                host.ceiling = maxOf(host.ceiling, current.toInt())
+                host.limit = maxOf(1.0, Math.floor(current / 2))
+                host.sleepSeconds = minOf(maxSleepSeconds, maxOf(1, host.sleepSeconds * 2))
+            } else if (!host.limit.isInfinite() || host.sleepSeconds > 0) {
+                if (!host.limit.isInfinite()) host.limit += 1 / host.limit
+                host.sleepSeconds = maxOf(0, host.sleepSeconds - 1)
+                if (host.limit >= host.ceiling && host.sleepSeconds == 0) {
+                    host.limit = Double.POSITIVE_INFINITY
+                    host.ceiling = 0
+                }
+            }
+        }
+    }
+
+    /* the host of the first url, with the aliases of the big sites folded together */
+    private fun key(request: YoutubeDLRequest): String? {
+        val url = request.urls.firstOrNull() ?: return null
+        val host = try {
+            URI(url.trim()).host?.lowercase() ?: return null
+        } catch (e: URISyntaxException) {
+            return null
+        }
+        val stripped = host.removePrefix("www.").removePrefix("m.").removePrefix("music.")
+        return aliases[stripped] ?: stripped
+    }
+
+    private val aliases = mapOf(
+        "youtu.be" to "youtube.com",
+        "youtube-nocookie.com" to "youtube.com"
+    )
+}
@@ -0,0 +1,39 @@
+package com.yausername.youtubedl_android
+
+import java.util.concurrent.ConcurrentHashMap
+
+/*
+ * Every running execution, from before its process starts until it is released. A processId
+ * is reserved with putIfAbsent, so two executions can never end up with the same one.
+ */
+internal object JobRegistry {
+    private val named = ConcurrentHashMap<String, YoutubeDLJob>()
+    private val anonymous: MutableSet<YoutubeDLJob> = ConcurrentHashMap.newKeySet()
+
+    @Throws(YoutubeDLException::class)
+    fun register(processId: String?, request: YoutubeDLRequest): YoutubeDLJob {
+        val job = YoutubeDLJob(processId, request.tags, request.qos)
+        if (processId == null) {
+            anonymous.add(job)
+        } else if (named.putIfAbsent(processId, job) != null) {
+            throw YoutubeDLException("Process ID already exists")
+        }
+        return job
+    }
+
+    fun unregister(job: YoutubeDLJob) {
+        if (job.id == null) anonymous.remove(job) else named.remove(job.id, job)
+    }
+
+    operator fun get(processId: String): YoutubeDLJob? {
+        return named[processId]
+    }
+
+    fun all(): List<YoutubeDLJob> {
+        return named.values + anonymous
+    }
+
+    fun tagged(tag: String): List<YoutubeDLJob> {
+        return all().filter { tag in it.tags }
+    }
+}
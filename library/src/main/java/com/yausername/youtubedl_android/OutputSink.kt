@@ -0,0 +1,247 @@
+package com.yausername.youtubedl_android
+
+import java.io.BufferedWriter
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.OutputStreamWriter
+import java.io.Writer
+import java.nio.charset.StandardCharsets
+import java.util.ArrayDeque
+
+/*
+ * Where yt-dlp's stdout or stderr goes while it runs, see YoutubeDLRequest.outSink and errSink.
+ * The default keeps output in memory. spill keeps it in memory up to a threshold and then in a
+ * temp file, so -J on a large playlist does not have to fit in the heap; the file lives until
+ * the response is closed, so a caller choosing it has to close the response.
+ */
+abstract class OutputSink internal constructor() {
+    /* a fresh target for one execution, spilled files go to spillDir */
+    internal abstract fun open(spillDir: File): Target
+
+    /* whether what it keeps can be handed to several callers, see YoutubeDLRequest.singleFlight */
+    internal open val shareable: Boolean
+        get() = false
+
+    internal abstract class Target {
+        var length = 0L
+            private set
+
+        /* the first write that failed, the output kept is incomplete */
+        var error: IOException? = null
+            private set
+
+        fun append(c: Char) {
+            length++
+            if (error != null) return
+            try {
+                write(c)
+            } catch (e: IOException) {
+                error = e
+            }
+        }
+
+        /* called once the stream is closed */
+        fun finish(): CapturedOutput {
+            return try {
+                captured()
+            } catch (e: IOException) {
+                if (error == null) error = e
+                CapturedOutput.InMemory("", length)
+            }
+        }
+
+        @Throws(IOException::class)
+        protected abstract fun write(c: Char)
+
+        @Throws(IOException::class)
+        protected abstract fun captured(): CapturedOutput
+    }
+
+    /* feeds both targets, captured is what first kept */
+    internal class Tee(private val first: Target, private val second: Target) : Target() {
+        override fun write(c: Char) {
+            first.append(c)
+            second.append(c)
+        }
+
+        override fun captured(): CapturedOutput {
+            second.finish()
+            return first.finish()
+        }
+    }
+
+    /* splits on \n and \r like the progress callback, empty lines are dropped */
+    private abstract class LineTarget : Target() {
+        private val line = StringBuilder()
+
+        override fun write(c: Char) {
+            if (c != '\n' && c != '\r') {
+                line.append(c)
+                return
+            }
+            flushLine()
+        }
+
+        override fun captured(): CapturedOutput {
+            flushLine()
+            return lines()
+        }
+
+        private fun flushLine() {
+            if (line.isEmpty()) return
+            onLine(line.toString())
+            line.setLength(0)
+        }
+
+        abstract fun onLine(line: String)
+
+        abstract fun lines(): CapturedOutput
+    }
+
+    /*
+     * Hands the lines of every execution it is opened for to one target, a whole line at a
+     * time, for executions running together that write to the same file or callback.
+     */
+    internal class Joined(private val target: Target) : OutputSink() {
+        override fun open(spillDir: File): Target = object : LineTarget() {
+            override fun onLine(line: String) {
+                synchronized(target) {
+                    for (c in line) target.append(c)
+                    target.append('\n')
+                }
+            }
+
+            override fun lines(): CapturedOutput = CapturedOutput.InMemory("", length)
+        }
+    }
+
+    private class Memory : OutputSink() {
+        override val shareable: Boolean
+            get() = true
+
+        override fun open(spillDir: File): Target = object : Target() {
+            private val chars = StringBuilder()
+
+            override fun write(c: Char) {
+                chars.append(c)
+            }
+
+            override fun captured(): CapturedOutput = CapturedOutput.InMemory(chars, length)
+        }
+    }
+
+    private class Discard : OutputSink() {
+        override fun open(spillDir: File): Target = object : Target() {
+            override fun write(c: Char) {}
+
+            override fun captured(): CapturedOutput = CapturedOutput.InMemory("", length)
+        }
+    }
+
+    private class Tail(private val maxLines: Int) : OutputSink() {
+        override fun open(spillDir: File): Target = object : LineTarget() {
+            private val tail = ArrayDeque<String>(maxLines)
+
+            override fun onLine(line: String) {
+                if (tail.size == maxLines) tail.removeFirst()
+                tail.addLast(line)
+            }
+
+            override fun lines(): CapturedOutput = CapturedOutput.InMemory(tail.joinToString("\n"), length)
+        }
+    }
+
+    private class Callback(private val callback: (String) -> Unit) : OutputSink() {
+        override fun open(spillDir: File): Target = object : LineTarget() {
+            override fun onLine(line: String) {
+                callback(line)
+            }
+
+            override fun lines(): CapturedOutput = CapturedOutput.InMemory("", length)
+        }
+    }
+
+    private class ToFile(private val file: File) : OutputSink() {
+        override fun open(spillDir: File): Target = object : Target() {
+            private var writer: Writer? = null
+
+            override fun write(c: Char) {
+                (writer ?: writer(file).also { writer = it }).write(c.code)
+            }
+
+            override fun captured(): CapturedOutput {
+                (writer ?: writer(file)).close()
+                return CapturedOutput.InFile(file, length, false)
+            }
+        }
+    }
+
+    private class Spill(private val threshold: Int) : OutputSink() {
+        override val shareable: Boolean
+            get() = true
+
+        override fun open(spillDir: File): Target = object : Target() {
+            private val chars = StringBuilder()
+            private var file: File? = null
+            private var writer: Writer? = null
+
+            override fun write(c: Char) {
+                writer?.let {
+                    it.write(c.code)
+                    return
+                }
+                chars.append(c)
+                if (chars.length > threshold) {
+                    spillDir.mkdirs()
+                    val spilled = File.createTempFile("output", ".txt", spillDir)
+                    file = spilled
+                    writer = writer(spilled).also { it.append(chars) }
+                    chars.setLength(0)
+                    chars.trimToSize()
+                }
+            }
+
+            override fun captured(): CapturedOutput {
+                val spilled = file ?: return CapturedOutput.InMemory(chars, length)
+                writer!!.close()
+                return CapturedOutput.InFile(spilled, length, true)
+            }
+        }
+    }
+
+    companion object {
+        const val defaultSpillThreshold = 1 shl 20
+
+        private fun writer(file: File): Writer {
+            return BufferedWriter(OutputStreamWriter(FileOutputStream(file), StandardCharsets.UTF_8))
+        }
+
+        @JvmStatic
+        fun discard(): OutputSink = Discard()
+
+        /* keeps the last maxLines lines */
+        @JvmStatic
+        fun tail(maxLines: Int): OutputSink {
+            require(maxLines > 0) { "maxLines must be positive" }
+            return Tail(maxLines)
+        }
+
+        /* keeps everything in memory, as execute always did; the default */
+        @JvmStatic
+        fun memory(): OutputSink = Memory()
+
+        /* writes to file, which is kept after the response is closed */
+        @JvmStatic
+        fun file(file: File): OutputSink = ToFile(file)
+
+        /* hands over each line as it is printed and keeps nothing */
+        @JvmStatic
+        fun callback(callback: (String) -> Unit): OutputSink = Callback(callback)
+
+        /* memory until thresholdChars, then a temp file deleted when the response is closed */
+        @JvmStatic
+        @JvmOverloads
+        fun spill(thresholdChars: Int = defaultSpillThreshold): OutputSink = Spill(thresholdChars)
+    }
+}
@@ -0,0 +1,117 @@
+package com.yausername.youtubedl_android
+
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.launch
+import java.io.File
+import java.io.IOException
+import java.util.TreeMap
+
+/*
+ * Downloads the entries of a playlist parallelism at a time instead of one after the other.
+ * The entries are listed with enumeratePlaylist first, then each one is downloaded by its own
+ * execution of the playlist url with --playlist-items, which keeps playlist_index and the
+ * other playlist fields of the output template. Every entry done goes to a --download-archive,
+ * so a later run of the same playlist only downloads what is left. Without one of the caller's
+ * it is kept in noBackupFilesDir, where the cache cleanup does not reach it. A sink of the
+ * request that is not shareable, a file or a callback, is opened once for the whole playlist
+ * and gets the lines of all entries, rather than once per entry.
+ */
+internal object PlaylistDownloader {
+    private class Entry(val index: Int, val archiveKey: String?)
+
+    suspend fun download(
+        request: YoutubeDLRequest,
+        parallelism: Int,
+        callback: ((Float, Long, String) -> Unit)?
+    ): PlaylistResult {
+        require(parallelism > 0) { "parallelism must be positive" }
+        val url = request.urls.singleOrNull() ?: throw YoutubeDLException("a playlist download takes one url")
+        val archive = request.getOption("--download-archive")?.let { File(it) }
+            ?: File(YoutubeDL.archiveDir!!.apply { mkdirs() }, "archive-${Integer.toHexString(url.trim().hashCode())}.txt")
+        val spillDir = YoutubeDL.outputDir!!
+        val out = request.outSink.takeIf { !it.shareable }?.open(spillDir)
+        val err = request.errSink.takeIf { !it.shareable }?.open(spillDir)
+        try {
+            return download(request, url, archive, parallelism, callback) { item ->
+                out?.let { item.outSink = OutputSink.Joined(it) }
+                err?.let { item.errSink = OutputSink.Joined(it) }
+            }
+        } finally {
+            out?.finish()?.discard()
+            err?.finish()?.discard()
+        }
+    }
+
+    private suspend fun download(
+        request: YoutubeDLRequest,
+        url: String,
+        archive: File,
+        parallelism: Int,
+        callback: ((Float, Long, String) -> Unit)?,
+        sinks: (YoutubeDLRequest) -> Unit
+    ): PlaylistResult {
+        val entries = entries(request.copy(listOf(url)).also(sinks))
+        val archived = archived(archive)
+        val pending = entries.filter { it.archiveKey == null || it.archiveKey !in archived }
+
+        val progress = TreeMap<Int, Float>()
+        var done = entries.size - pending.size
+        val report = { line: String ->
+            val overall = synchronized(progress) {
+                (done + progress.values.sum() / 100) * 100 / maxOf(1, entries.size)
+            }
+            callback?.invoke(overall, -1, line)
+        }
+        val failed = TreeMap<Int, YoutubeDLException>()
+        val queue = Channel<Entry>(Channel.UNLIMITED)
+        pending.forEach { queue.trySend(it) }
+        queue.close()
+        coroutineScope {
+            repeat(minOf(parallelism, pending.size)) {
+                launch {
+                    for (entry in queue) {
+                        val item = request.copy(listOf(url)).also(sinks)
+                            .addOption("--playlist-items", entry.index)
+                            .apply { if (!hasOption("--download-archive")) addOption("--download-archive", archive.absolutePath) }
+                        try {
+                            YoutubeDL.executeSuspending(item, null, false) { itemProgress, _, line ->
+                                synchronized(progress) { progress[entry.index] = maxOf(0f, itemProgress) }
+                                report(line)
+                            }.close()
+                        } catch (e: YoutubeDLException) {
+                            synchronized(failed) { failed[entry.index] = e }
+                        }
+                        synchronized(progress) {
+                            progress.remove(entry.index)
+                            done++
+                        }
+                        report("")
+                    }
+                }
+            }
+        }
+        return PlaylistResult(entries.size, pending.size - failed.size, entries.size - pending.size, failed)
+    }
+
+    /* with the request's own options, so that --playlist-items, filters and cookies apply */
+    private suspend fun entries(request: YoutubeDLRequest): List<Entry> {
+        val entries = YoutubeDLCoroutines.enumeratePlaylist(request).toList()
+        return entries.mapIndexed { position, entry ->
+            val extractor = entry.ieKey
+            val id = entry.id
+            val archiveKey = if (extractor != null && id != null) "${extractor.lowercase()} $id" else null
+            Entry(entry.playlistIndex ?: (position + 1), archiveKey)
+        }
+    }
+
+    /* "extractor id" lines, as --download-archive writes them */
+    private fun archived(archive: File): Set<String> {
+        return try {
+            if (archive.exists()) archive.readLines().map { it.trim() }.toSet() else emptySet()
+        } catch (e: IOException) {
+            emptySet()
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.yausername.youtubedl_android
+
+/*
+ * What YoutubeDLCoroutines.downloadPlaylist did with the entries of a playlist. skipped are
+ * those the download archive had from an earlier run, failed maps playlist_index to the error.
+ */
+class PlaylistResult internal constructor(
+    val total: Int,
+    val downloaded: Int,
+    val skipped: Int,
+    val failed: Map<Int, YoutubeDLException>
+)
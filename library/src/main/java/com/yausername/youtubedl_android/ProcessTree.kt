@@ -0,0 +1,89 @@
+package com.yausername.youtubedl_android
+
+import android.system.ErrnoException
+import android.system.Os
+import android.system.OsConstants
+import java.io.File
+import java.io.IOException
+
+/*
+ * The processes an execution started: python and whatever it spawned (ffmpeg, aria2c),
+ * found through the parent pids in /proc, which an app can read for its own processes.
+ */
+internal object ProcessTree {
+    /* java.lang.Process has no pid accessor before API 26, Android's implementation keeps it in a field */
+    fun pid(process: Process): Int? {
+        return try {
+            val field = process.javaClass.getDeclaredField("pid")
+            field.isAccessible = true
+            field.getInt(process)
+        } catch (e: Exception) {
+            null
+        }
+    }
+
+    /* pids below pid, parents before their children */
+    fun descendants(pid: Int): List<Int> {
+        val children = HashMap<Int, MutableList<Int>>()
+        File("/proc").listFiles()?.forEach { dir ->
+            val child = dir.name.toIntOrNull() ?: return@forEach
+            val parent = parentOf(child) ?: return@forEach
+            children.getOrPut(parent) { ArrayList() }.add(child)
+        }
+        val result = ArrayList<Int>()
+        var index = -1
+        var current = pid
+        while (true) {
+            children[current]?.let { result.addAll(it) }
+            if (++index >= result.size) break
+            current = result[index]
+        }
+        return result
+    }
+
+    /* children before their parents, so none is reparented away before its signal */
+    fun destroy(process: Process) {
+        pid(process)?.let { pid ->
+            for (child in descendants(pid).asReversed()) signal(child, OsConstants.SIGTERM)
+        }
+        process.destroy()
+    }
+
+    /*
+     * SIGSTOP goes to the process before its descendants, so a stopped parent cannot start new
+     * ones behind the scan; SIGCONT goes the other way round. false when the process is gone.
+     */
+    fun stop(process: Process): Boolean {
+        val pid = pid(process) ?: return false
+        if (!signal(pid, OsConstants.SIGSTOP)) return false
+        for (child in descendants(pid)) signal(child, OsConstants.SIGSTOP)
+        return true
+    }
+
+    fun resume(process: Process): Boolean {
+        val pid = pid(process) ?: return false
+        for (child in descendants(pid).asReversed()) signal(child, OsConstants.SIGCONT)
+        return signal(pid, OsConstants.SIGCONT)
+    }
+
+    fun signal(pid: Int, signal: Int): Boolean {
+        return try {
+            Os.kill(pid, signal)
+            true
+        } catch (e: ErrnoException) {
+            false
+        }
+    }
+
+    private fun parentOf(pid: Int): Int? {
+        return try {
+            // pid (comm) state ppid ..., comm may itself contain spaces and parentheses
+            val stat = File("/proc/$pid/stat").readText()
+            stat.substring(stat.lastIndexOf(')') + 2).split(' ')[1].toIntOrNull()
+        } catch (e: IOException) {
+            null
+        } catch (e: IndexOutOfBoundsException) {
+            null
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.yausername.youtubedl_android
+
+import android.content.Context
+import com.yausername.youtubedl_common.utils.ExtractionStats
+import com.yausername.youtubedl_common.utils.PackageArchive
+import org.apache.commons.io.IOUtils
+import java.io.File
+import java.io.InputStream
+import java.nio.charset.StandardCharsets
+
+/*
+ * Records which stdlib modules yt-dlp imports and turns that record into a manifest, so
+ * init only extracts the part of the python package that is actually used.
+ *
+ * Recording: startRecording, run a representative set of requests, stopRecording. The
+ * output lists stdlib files relative to usr/lib/python3.x, one per line, and can be
+ * shipped as an asset and passed to YoutubeDL.init through readManifest.
+ */
+object PythonProfile {
+    private val stdlibEntry = Regex("^usr/lib/(python3\\.\\d+)/(.*)$")
+    private val alwaysExtracted = listOf("encodings/", "lib-dynload/")
+    private const val fallbackPth = "youtubedl-android-fallback.pth"
+
+    @Volatile
+    private var recording: Pair<File, String>? = null
+
+    @Volatile
+    var lastExtraction: ExtractionStats? = null
+        internal set
+
+    fun startRecording(appContext: Context, output: File) {
+        val script = appContext.resources.openRawResource(R.raw.record_imports).use {
+            IOUtils.toString(it, StandardCharsets.UTF_8)
+        }
+        recording = output to script
+    }
+
+    fun stopRecording() {
+        recording = null
+    }
+
+    fun readManifest(input: InputStream): Set<String> {
+        return IOUtils.readLines(input, StandardCharsets.UTF_8)
+            .map { it.trim() }
+            .filter { it.isNotEmpty() && !it.startsWith("#") }
+            .toSet()
+    }
+
+    /* wraps a yt-dlp command line so the run is recorded, when recording */
+    internal fun wrap(python: String, ytdlp: String): List<String> {
+        val (output, script) = recording ?: return listOf(python, ytdlp)
+        return listOf(python, "-c", script, output.absolutePath, ytdlp)
+    }
+
+    internal fun filter(manifest: Set<String>): (String) -> Boolean {
+        val directories = manifest.map { it.substringBeforeLast('/', "") }.toSet()
+        return { name ->
+            val match = stdlibEntry.find(name)
+            match == null || isRequired(match.groupValues[2], manifest, directories)
+        }
+    }
+
+    private fun isRequired(path: String, manifest: Set<String>, directories: Set<String>): Boolean {
+        if (alwaysExtracted.any { path.startsWith(it) }) return true
+        val directory = path.substringBeforeLast('/', "")
+        val fileName = path.substringAfterLast('/')
+        return when {
+            fileName.endsWith(".py") -> path in manifest
+            fileName.endsWith(".pyc") -> {
+                // __pycache__/name.cpython-3x.pyc belongs to name.py
+                val sourceDirectory = directory.removeSuffix("__pycache__").removeSuffix("/")
+                val source = fileName.substringBefore('.') + ".py"
+                (if (sourceDirectory.isEmpty()) source else "$sourceDirectory/$source") in manifest
+            }
+            // data files ship with the packages that read them
+            else -> directory in directories
+        }
+    }
+
+    /*
+     * Escape hatch for modules the profile missed: a .pth file appends a zip of the stdlib to
+     * the end of sys.path, so such modules are imported from it by zipimport on demand. A
+     * package zip is used as it is, a package archive gets the skipped files copied into a
+     * zip of their own, since zipimport cannot read it.
+     */
+    internal fun installFallback(pythonDir: File, pythonLib: File, manifest: Set<String>) {
+        val stdlib = File(pythonDir, "usr/lib").listFiles()
+            ?.firstOrNull { it.isDirectory && stdlibEntry.matches("usr/lib/${it.name}/") } ?: return
+        val fallback = if (PackageArchive.isPackageArchive(pythonLib)) {
+            val extracted = filter(manifest)
+            File(pythonDir, "usr/lib/${stdlib.name}-fallback.zip").also { zip ->
+                PackageArchive.copyToZip(pythonLib, zip) { stdlibEntry.matches(it) && !extracted(it) }
+            }
+        } else {
+            pythonLib
+        }
+        val sitePackages = File(stdlib, "site-packages")
+        sitePackages.mkdirs()
+        File(sitePackages, fallbackPth).writeText(
+            "import sys; sys.path.append('${fallback.absolutePath}/usr/lib/${stdlib.name}')\n"
+        )
+    }
+}
@@ -0,0 +1,83 @@
+package com.yausername.youtubedl_android
+
+import android.os.Process as OsProcess
+import android.util.Log
+
+/*
+ * Applies YoutubeDLRequest.QoS to executions. Each process gets the niceness of its class at
+ * launch, which python's threads and the ffmpeg/aria2c processes it starts later inherit.
+ * While an INTERACTIVE execution runs and more executions are running than
+ * YoutubeDL.preemptionBudget allows, BACKGROUND ones are paused until the last interactive
+ * execution is done, including background executions that start in the meantime.
+ */
+internal object QoSController {
+    private val TAG = QoSController::class.java.simpleName
+    private val lock = Any()
+    private var interactive = 0
+    private val preempted = HashSet<YoutubeDLJob>()
+
+    /* before the process starts, so background work yields while the interactive one starts up */
+    fun admitted(job: YoutubeDLJob) {
+        if (job.qos != YoutubeDLRequest.QoS.INTERACTIVE) return
+        synchronized(lock) {
+            interactive++
+            if (saturated()) {
+                for (running in JobRegistry.all()) preempt(running)
+            }
+        }
+    }
+
+    fun started(job: YoutubeDLJob) {
+        if (job.pid > 0) {
+            try {
+                OsProcess.setThreadPriority(job.pid, niceness(job.qos))
+            } catch (e: Exception) {
+                // IllegalArgumentException or SecurityException when the process is gone or not ours
+                Log.w(TAG, "failed to set priority of ${job.pid}", e)
+            }
+        }
+        synchronized(lock) {
+            if (interactive > 0 && saturated()) preempt(job)
+        }
+    }
+
+    fun finished(job: YoutubeDLJob) {
+        val resumed = synchronized(lock) {
+            preempted.remove(job)
+            if (job.qos != YoutubeDLRequest.QoS.INTERACTIVE || --interactive > 0) return
+            ArrayList(preempted).also { preempted.clear() }
+        }
+        for (background in resumed) background.resume()
+    }
+
+    /* a preempted job the user pauses stays paused when the interactive work is done */
+    fun keepPaused(job: YoutubeDLJob): Boolean {
+        synchronized(lock) {
+            return preempted.remove(job)
+        }
+    }
+
+    fun hasInteractive(): Boolean {
+        synchronized(lock) {
+            return interactive > 0
+        }
+    }
+
+    /* jobs paused by the user or by preemption take no cpu and do not count */
+    private fun saturated(): Boolean {
+        return JobRegistry.all().count { !it.isPaused } > YoutubeDL.preemptionBudget
+    }
+
+    private fun preempt(job: YoutubeDLJob) {
+        if (job.qos == YoutubeDLRequest.QoS.BACKGROUND && job.pause()) preempted.add(job)
+    }
+
+    /* negative niceness is allowed to apps, as for their own threads */
+    private fun niceness(qos: YoutubeDLRequest.QoS): Int {
+        return when (qos) {
+            YoutubeDLRequest.QoS.INTERACTIVE -> OsProcess.THREAD_PRIORITY_FOREGROUND
+            YoutubeDLRequest.QoS.DEFAULT -> OsProcess.THREAD_PRIORITY_DEFAULT
+            YoutubeDLRequest.QoS.BACKGROUND -> OsProcess.THREAD_PRIORITY_BACKGROUND
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.yausername.youtubedl_android
+
+import com.yausername.youtubedl_android.mapper.VideoInfo
+
+/* one url of YoutubeDLCoroutines.resolveAll, with its info or why there is none */
+class ResolvedUrl internal constructor(
+    val url: String,
+    val info: VideoInfo?,
+    val error: YoutubeDLException?
+)
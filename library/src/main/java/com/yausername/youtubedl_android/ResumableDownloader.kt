@@ -0,0 +1,158 @@
+package com.yausername.youtubedl_android
+
+import com.yausername.youtubedl_common.utils.HexUtils.hex
+import com.yausername.youtubedl_common.utils.InstallUtils
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+import java.net.HttpURLConnection
+import java.net.URL
+import java.security.MessageDigest
+
+/*
+ * Downloads a file next to its target and renames it into place. A dropped connection is
+ * resumed with a range request guarded by If-Range, so a changed file restarts from zero,
+ * and the sha-256 is computed while the bytes are written. The partial file and its
+ * validator survive the process, a later download of the same url picks them up.
+ */
+internal object ResumableDownloader {
+    private const val maxAttempts = 5
+    private const val retryDelayMillis = 1000L
+    private const val bufferSize = 64 * 1024
+    private const val resumeSuffix = ".resume"
+
+    private class Partial(val url: String, val file: File) {
+        val resumeFile = File(file.path + resumeSuffix)
+        val digest: MessageDigest = MessageDigest.getInstance("SHA-256")
+        var length = 0L
+        var validator: String? = null
+
+        fun restart(validator: String?) {
+            FileOutputStream(file).close()
+            digest.reset()
+            length = 0
+            this.validator = validator
+            resumeFile.writeText(url + "\n" + (validator ?: ""))
+        }
+
+        fun delete() {
+            file.delete()
+            resumeFile.delete()
+        }
+    }
+
+    @Throws(IOException::class, YoutubeDLException::class)
+    fun download(url: String, target: File, expectedSha256: String?): DownloadStats {
+        val stats = DownloadStats()
+        val start = System.currentTimeMillis()
+        target.parentFile?.mkdirs()
+        val partial = openPartial(url, InstallUtils.tempFileFor(target))
+        stats.resumedBytes = partial.length
+        var attempt = 0
+        while (true) {
+            attempt++
+            stats.attempts = attempt
+            try {
+                transfer(partial, stats)
+                break
+            } catch (e: IOException) {
+                if (attempt == maxAttempts) throw e
+                try {
+                    Thread.sleep(retryDelayMillis shl (attempt - 1))
+                } catch (interrupted: InterruptedException) {
+                    Thread.currentThread().interrupt()
+                    throw e
+                }
+            }
+        }
+        stats.elapsedMillis = System.currentTimeMillis() - start
+        val actual = hex(partial.digest.digest())
+        if (expectedSha256 != null && !actual.equals(expectedSha256, ignoreCase = true)) {
+            partial.delete()
+            throw YoutubeDLException("sha-256 mismatch for $url: expected $expectedSha256, got $actual")
+        }
+        InstallUtils.commit(partial.file, target)
+        partial.resumeFile.delete()
+        stats.verified = expectedSha256 != null
+        return stats
+    }
+
+    /* picks up what an earlier process left for the same url, its prefix is hashed once */
+    private fun openPartial(url: String, file: File): Partial {
+        val partial = Partial(url, file)
+        val resume = if (partial.resumeFile.exists()) partial.resumeFile.readLines() else emptyList()
+        if (file.exists() && resume.size == 2 && resume[0] == url && resume[1].isNotEmpty()) {
+            partial.validator = resume[1]
+            FileInputStream(file).use { input ->
+                val buffer = ByteArray(bufferSize)
+                while (true) {
+                    val read = input.read(buffer)
+                    if (read < 0) break
+                    partial.digest.update(buffer, 0, read)
+                    partial.length += read
+                }
+            }
+        } else {
+            partial.delete()
+        }
+        return partial
+    }
+
+    @Throws(IOException::class)
+    private fun transfer(partial: Partial, stats: DownloadStats) {
+        val connection = URL(partial.url).openConnection() as HttpURLConnection
+        connection.connectTimeout = 10000
+        connection.readTimeout = 15000
+        val resuming = partial.length > 0 && partial.validator != null
+        if (resuming) {
+            connection.setRequestProperty("Range", "bytes=${partial.length}-")
+            connection.setRequestProperty("If-Range", partial.validator)
+        }
+        try {
+            val total = when (val code = connection.responseCode) {
+                HttpURLConnection.HTTP_PARTIAL -> {
+                    // bytes <start>-<end>/<total>
+                    val range = connection.getHeaderField("Content-Range")
+                        ?.removePrefix("bytes ")?.split('-', '/')
+                    if (!resuming || range?.size != 3 || range[0].toLongOrNull() != partial.length) {
+                        partial.restart(null)
+                        throw IOException("unexpected range ${connection.getHeaderField("Content-Range")}")
+                    }
+                    range[2].toLongOrNull() ?: -1L
+                }
+                HttpURLConnection.HTTP_OK -> {
+                    // the whole file, as asked for or because the validator no longer matches
+                    partial.restart(connection.getHeaderField("ETag") ?: connection.getHeaderField("Last-Modified"))
+                    connection.contentLengthLong
+                }
+                else -> {
+                    if (resuming) partial.restart(null)
+                    throw IOException("download failed with HTTP $code: ${partial.url}")
+                }
+            }
+            connection.inputStream.use { input ->
+                FileOutputStream(partial.file, true).use { out ->
+                    val buffer = ByteArray(bufferSize)
+                    try {
+                        while (true) {
+                            val read = input.read(buffer)
+                            if (read < 0) break
+                            out.write(buffer, 0, read)
+                            partial.digest.update(buffer, 0, read)
+                            partial.length += read
+                            stats.bytes += read
+                        }
+                    } finally {
+                        out.fd.sync()
+                    }
+                }
+            }
+            if (total >= 0 && partial.length != total) {
+                throw IOException("connection closed at ${partial.length} of $total bytes")
+            }
+        } finally {
+            connection.disconnect()
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.yausername.youtubedl_android
+
+import java.util.Random
+
+/*
+ * Relaunches an execution that failed with one of retryOn, at most maxAttempts launches in
+ * total. The n-th retry waits initialDelayMillis * multiplier^(n-1), capped at maxDelayMillis,
+ * spread by +-jitter so clients rate limited together do not come back together.
+ */
+class RetryPolicy @JvmOverloads constructor(
+    val maxAttempts: Int = 3,
+    val initialDelayMillis: Long = 1000,
+    val maxDelayMillis: Long = 60_000,
+    val multiplier: Double = 2.0,
+    val jitter: Double = 0.2,
+    val retryOn: Set<ErrorCategory> = ErrorCategory.values().filter { it.transient }.toSet()
+) {
+    init {
+        require(maxAttempts >= 1) { "maxAttempts must be at least 1" }
+        require(jitter in 0.0..1.0) { "jitter must be between 0 and 1" }
+    }
+
+    internal fun shouldRetry(category: ErrorCategory, attempt: Int): Boolean {
+        return attempt < maxAttempts && category in retryOn
+    }
+
+    /* delay before launch attempt + 1 */
+    internal fun delayMillis(attempt: Int): Long {
+        val exponential = initialDelayMillis * Math.pow(multiplier, (attempt - 1).toDouble())
+        val capped = minOf(exponential, maxDelayMillis.toDouble())
+        return (capped * (1 + jitter * (2 * random.nextDouble() - 1))).toLong().coerceAtLeast(0)
+    }
+
+    override fun toString(): String {
+        return "RetryPolicy($maxAttempts, $initialDelayMillis, $maxDelayMillis, $multiplier, $jitter, " +
+                "${retryOn.sorted()})"
+    }
+
+    companion object {
+        private val random = Random()
+
+        /* one launch, failures are reported as they are */
+        @JvmField
+        val NONE = RetryPolicy(maxAttempts = 1)
+    }
+}
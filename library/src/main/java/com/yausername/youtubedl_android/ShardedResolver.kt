@@ -0,0 +1,120 @@
+package com.yausername.youtubedl_android
+
+import com.fasterxml.jackson.core.JsonProcessingException
+import com.yausername.youtubedl_android.mapper.VideoInfo
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.buffer
+import kotlinx.coroutines.flow.channelFlow
+import kotlinx.coroutines.launch
+import java.io.File
+import java.io.IOException
+import java.util.concurrent.atomic.AtomicInteger
+
+/*
+ * Resolves many urls with --dump-json, a few dozen per yt-dlp process and parallelism
+ * processes at a time, emitting each url's info as its line is printed. Urls a shard left
+ * without info are tried again together in one more shard, which tells a process that died
+ * from urls that fail, and then one by one, which gives each failing url its own error.
+ */
+internal object ShardedResolver {
+    private const val maxShardSize = 50
+    // what a yt-dlp process extracting takes, roughly
+    private const val processBytes = 80L * 1024 * 1024
+
+    private class Shard(val urls: List<String>, val attempt: Int)
+
+    fun resolve(urls: List<String>, parallelism: Int): Flow<ResolvedUrl> = channelFlow {
+        val distinct = urls.distinct()
+        if (distinct.isEmpty()) return@channelFlow
+        val workers = (if (parallelism > 0) parallelism else defaultParallelism()).coerceAtMost(distinct.size)
+        // several shards per worker, so that a slow shard does not hold up the end
+        val shardSize = (distinct.size / (workers * 4)).coerceIn(1, maxShardSize)
+        val queue = Channel<Shard>(Channel.UNLIMITED)
+        val pending = AtomicInteger()
+        for (shard in distinct.chunked(shardSize)) {
+            pending.incrementAndGet()
+            queue.trySend(Shard(shard, 1))
+        }
+        repeat(workers) {
+            launch {
+                for (shard in queue) {
+                    val left = resolveShard(shard) { trySend(it) }
+                    val retries = when {
+                        left.isEmpty() -> emptyList()
+                        shard.attempt == 1 && left.size > 1 -> listOf(Shard(left, 2))
+                        else -> left.map { Shard(listOf(it), 3) }
+                    }
+                    for (retry in retries) {
+                        pending.incrementAndGet()
+                        queue.trySend(retry)
+                    }
+                    if (pending.decrementAndGet() == 0) queue.close()
+                }
+            }
+        }
+    }.buffer(Channel.UNLIMITED)
+
+    /* the cores, fewer when there is not memory enough for a process on each */
+    fun defaultParallelism(): Int {
+        val cores = Runtime.getRuntime().availableProcessors()
+        val available = availableMemory() ?: return cores
+        return (available / processBytes).toInt().coerceIn(1, cores)
+    }
+
+    /*
+     * Emits what the shard resolves and returns the urls left without info. A shard of one
+     * url that fails emits it with the error.
+     */
+    private suspend fun resolveShard(shard: Shard, emit: (ResolvedUrl) -> Unit): List<String> {
+        val remaining = LinkedHashSet(shard.urls)
+        val request = YoutubeDLRequest(shard.urls)
+            .addOption("--dump-json")
+            .addOption("--ignore-errors")
+            .apply { outSink = OutputSink.discard() }
+        val error = try {
+            YoutubeDL.executeSuspending(request, null, false) { _, _, line ->
+                if (line.startsWith("{")) parse(line)?.let { info ->
+                    val url = synchronized(remaining) { match(info, remaining)?.also { remaining.remove(it) } }
+                    if (url != null) emit(ResolvedUrl(url, info, null))
+                }
+            }.close()
+            null
+        } catch (e: YoutubeDLException) {
+            e
+        }
+        if (shard.urls.size > 1 || remaining.isEmpty()) return remaining.toList()
+        emit(ResolvedUrl(shard.urls[0], null, error ?: YoutubeDLException("Failed to fetch video information")))
+        return emptyList()
+    }
+
+    private fun parse(line: String): VideoInfo? {
+        return try {
+            YoutubeDL.objectMapper.readValue(line, VideoInfo::class.java)
+        } catch (e: JsonProcessingException) {
+            null
+        }
+    }
+
+    /*
+     * The url info was extracted for, compared normalized. Info that matches none is dropped
+     * rather than given to a url by position, which with --ignore-errors may be one that failed;
+     * its url is left for the retry shards.
+     */
+    private fun match(info: VideoInfo, remaining: Set<String>): String? {
+        for (candidate in listOfNotNull(info.originalUrl, info.webpageUrl)) {
+            val normalized = YoutubeDLRequest.normalize(candidate)
+            remaining.firstOrNull { YoutubeDLRequest.normalize(it) == normalized }?.let { return it }
+        }
+        return null
+    }
+
+    private fun availableMemory(): Long? {
+        return try {
+            File("/proc/meminfo").readLines().firstOrNull { it.startsWith("MemAvailable:") }
+                ?.split(Regex("\\s+"))?.getOrNull(1)?.toLongOrNull()?.times(1024)
+        } catch (e: IOException) {
+            null
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.yausername.youtubedl_android
+
+import kotlinx.coroutines.suspendCancellableCoroutine
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.coroutines.resume
+
+/*
+ * Identical requests executed at once share one execution, see YoutubeDLRequest.singleFlight.
+ * The first one leads and runs it, the others follow: they get the leader's progress and a
+ * response of their own to the same output, which is discarded once all of them are closed.
+ * A cancelled follower just stops waiting. Followers of a leader that was cancelled run the
+ * request again, the first of them leading.
+ */
+internal object SingleFlight {
+    private val flights = HashMap<String, Flight>()
+
+    class Flight internal constructor(internal val key: String) {
+        internal val followers = ArrayList<Follower>()
+
+        fun progress(progress: Float, etaInSeconds: Long, line: String) {
+            val followers = synchronized(flights) { ArrayList(followers) }
+            for (follower in followers) {
+                follower.job.progress(progress, etaInSeconds)
+                follower.callback?.invoke(progress, etaInSeconds, line)
+            }
+        }
+    }
+
+    class Follower internal constructor(
+        internal val job: YoutubeDLJob,
+        internal val callback: ((Float, Long, String) -> Unit)?,
+        internal val flight: Flight
+    ) {
+        private val done = CountDownLatch(1)
+        private val listeners = ArrayList<() -> Unit>()
+        private var response: YoutubeDLResponse? = null
+        private var failure: YoutubeDLException? = null
+
+        /* the leader's response, null when it was cancelled and the request has to run again */
+        @Throws(YoutubeDLException::class, InterruptedException::class, YoutubeDL.CanceledException::class)
+        fun await(): YoutubeDLResponse? {
+            try {
+                done.await()
+            } catch (e: InterruptedException) {
+                abandon(this)
+                throw e
+            } finally {
+                JobRegistry.unregister(job)
+            }
+            return outcome()
+        }
+
+        @Throws(YoutubeDLException::class, YoutubeDL.CanceledException::class)
+        suspend fun awaitSuspending(): YoutubeDLResponse? {
+            try {
+                suspendCancellableCoroutine<Unit> { continuation ->
+                    whenDone { continuation.resume(Unit) }
+                    continuation.invokeOnCancellation { abandon(this) }
+                }
+            } finally {
+                JobRegistry.unregister(job)
+            }
+            return outcome()
+        }
+
+        /* what comes after the first completion, a cancel racing the leader, is closed */
+        internal fun complete(response: YoutubeDLResponse?, failure: YoutubeDLException?) {
+            val listeners = synchronized(this) {
+                if (done.count == 0L) {
+                    response?.close()
+                    return
+                }
+                this.response = response
+                this.failure = failure
+                done.countDown()
+                ArrayList(listeners).also { listeners.clear() }
+            }
+            for (listener in listeners) listener()
+        }
+
+        @Synchronized
+        internal fun close() {
+            response?.close()
+        }
+
+        private fun whenDone(listener: () -> Unit) {
+            val alreadyDone = synchronized(this) {
+                if (done.count > 0) listeners.add(listener)
+                done.count == 0L
+            }
+            if (alreadyDone) listener()
+        }
+
+        private fun outcome(): YoutubeDLResponse? {
+            if (job.isCancelled) {
+                close()
+                throw YoutubeDL.CanceledException()
+            }
+            failure?.let { throw it }
+            return response
+        }
+    }
+
+    /* null when request cannot be shared */
+    fun key(request: YoutubeDLRequest, redirectErrorStream: Boolean): String? {
+        if (!request.singleFlight || !request.outSink.shareable || !request.errSink.shareable) return null
+        return "${request.settingsFingerprint()} $redirectErrorStream\n${request.fingerprint()}"
+    }
+
+    /* a new flight for the caller to run, null when one is running under key already */
+    fun lead(key: String): Flight? {
+        synchronized(flights) {
+            if (flights.containsKey(key)) return null
+            return Flight(key).also { flights[key] = it }
+        }
+    }
+
+    /* a follower of the flight running under key, null when there is none (any more) */
+    @Throws(YoutubeDLException::class)
+    fun follow(
+        key: String,
+        processId: String?,
+        request: YoutubeDLRequest,
+        callback: ((Float, Long, String) -> Unit)?
+    ): Follower? {
+        synchronized(flights) {
+            val flight = flights[key] ?: return null
+            val job = JobRegistry.register(processId, request)
+            val follower = Follower(job, callback, flight)
+            job.cancelListener = { abandon(follower) }
+            flight.followers.add(follower)
+            return follower
+        }
+    }
+
+    /* hands the outcome of flight to its followers, returns the leader's share of response */
+    fun finish(flight: Flight, response: YoutubeDLResponse?, failure: Throwable?): YoutubeDLResponse? {
+        val followers = synchronized(flights) {
+            flights.remove(flight.key, flight)
+            ArrayList(flight.followers).also { flight.followers.clear() }
+        }
+        if (followers.isEmpty()) return response
+        if (response != null) {
+            val shares = share(response, followers.size + 1)
+            followers.forEachIndexed { i, follower -> follower.complete(shares[i + 1], null) }
+            return shares[0]
+        }
+        for (follower in followers) follower.complete(null, failure as? YoutubeDLException)
+        return null
+    }
+
+    private fun abandon(follower: Follower) {
+        synchronized(flights) {
+            follower.flight.followers.remove(follower)
+        }
+        follower.complete(null, null)
+        follower.close()
+    }
+
+    private fun share(response: YoutubeDLResponse, count: Int): List<YoutubeDLResponse> {
+        val outHolders = AtomicInteger(count)
+        val errHolders = AtomicInteger(count)
+        return List(count) {
+            YoutubeDLResponse(
+                response.command,
+                response.exitCode,
+                response.elapsedTime,
+                CapturedOutput.Shared(response.stdout, outHolders),
+                CapturedOutput.Shared(response.stderr, errHolders)
+            ).apply {
+                stallRestarts = response.stallRestarts
+                recoveredBytes = response.recoveredBytes
+            }
+        }
+    }
+}
@@ -7,8 +7,11 @@ import java.io.InputStreamReader
 import java.io.Reader
 import java.nio.charset.StandardCharsets
 
-internal class StreamGobbler(private val buffer: StringBuffer, private val stream: InputStream) :
-    Thread() {
+internal class StreamGobbler(
+    private val target: OutputSink.Target,
+    private val stream: InputStream,
+    private val onClosed: (() -> Unit)? = null
+) : Thread() {
     init {
         start()
     }
@@ -18,10 +21,12 @@ internal class StreamGobbler(private val buffer: StringBuffer, private val strea
             val `in`: Reader = InputStreamReader(stream, StandardCharsets.UTF_8)
             var nextChar: Int
             while (`in`.read().also { nextChar = it } != -1) {
-                buffer.append(nextChar.toChar())
+                target.append(nextChar.toChar())
             }
         } catch (e: IOException) {
             Log.e(TAG, "failed to read stream", e)
+        } finally {
+            onClosed?.invoke()
         }
     }
 
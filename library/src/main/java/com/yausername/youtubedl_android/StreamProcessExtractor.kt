@@ -9,9 +9,10 @@ import java.nio.charset.StandardCharsets
 import java.util.regex.Pattern
 
 internal class StreamProcessExtractor(
-    private val buffer: StringBuffer,
+    private val target: OutputSink.Target,
     private val stream: InputStream,
-    private val callback: ((Float, Long, String) -> Unit)?
+    private val callback: ((Float, Long, String) -> Unit)?,
+    private val onClosed: (() -> Unit)? = null
 ) : Thread() {
     private val p = Pattern.compile("\\[download\\]\\s+(\\d+\\.\\d)% .* ETA (\\d+):(\\d+)")
     private val pAria2c =
@@ -30,7 +31,7 @@ internal class StreamProcessExtractor(
             val currentLine = StringBuilder()
             var nextChar: Int
             while (input.read().also { nextChar = it } != -1) {
-                buffer.append(nextChar.toChar())
+                target.append(nextChar.toChar())
                 if (nextChar == '\r'.code || nextChar == '\n'.code && callback != null) {
                     val line = currentLine.toString()
                     processOutputLine(line)
@@ -41,6 +42,8 @@ internal class StreamProcessExtractor(
             }
         } catch (e: IOException) {
             Log.e(TAG, "failed to read stream", e)
+        } finally {
+            onClosed?.invoke()
         }
     }
 
@@ -1,16 +1,19 @@
 package com.yausername.youtubedl_android
 
 import android.content.Context
-import android.os.Build
+import android.util.Log
 import com.fasterxml.jackson.databind.ObjectMapper
 import com.yausername.youtubedl_android.mapper.VideoInfo
 import com.yausername.youtubedl_common.SharedPrefsHelper
 import com.yausername.youtubedl_common.SharedPrefsHelper.update
-import com.yausername.youtubedl_common.utils.ZipUtils.unzip
+import com.yausername.youtubedl_common.utils.InstallUtils
+import com.yausername.youtubedl_common.utils.SharedLibraryStore
+import com.yausername.youtubedl_common.utils.ZipUtils.extract
+import kotlinx.coroutines.CancellationException
 import org.apache.commons.io.FileUtils
 import java.io.File
 import java.io.IOException
-import java.util.Collections
+import java.util.concurrent.TimeUnit
 import kotlin.collections.set
 
 object YoutubeDL {
@@ -18,17 +21,26 @@ object YoutubeDL {
     private var pythonPath: File? = null
     private var ffmpegPath: File? = null
     private var quickJsPath: File? = null
-    private var ytdlpPath: File? = null
+    internal var installation: YoutubeDLInstallation? = null
+        private set
     private var binDir: File? = null
     private var ENV_LD_LIBRARY_PATH: String? = null
     private var ENV_SSL_CERT_FILE: String? = null
     private var ENV_PYTHONHOME: String? = null
     private var TMPDIR: String = ""
-    private val idProcessMap = Collections.synchronizedMap(HashMap<String, Process>())
-
+    internal var outputDir: File? = null
+        private set
+    internal var archiveDir: File? = null
+        private set
+
+    /*
+     * pythonManifest: stdlib files to extract, as recorded by PythonProfile. Null extracts
+     * the whole python package.
+     */
     @Synchronized
+    @JvmOverloads
     @Throws(YoutubeDLException::class)
-    fun init(appContext: Context) {
+    fun init(appContext: Context, pythonManifest: Set<String>? = null) {
         if (initialized) return
         val baseDir = File(appContext.noBackupFilesDir, baseName)
         if (!baseDir.exists()) baseDir.mkdir()
@@ -41,44 +53,65 @@ object YoutubeDL {
         val ffmpegDir = File(packagesDir, ffmpegDirName)
         val aria2cDir = File(packagesDir, aria2cDirName)
         val ytdlpDir = File(baseDir, ytdlpDirName)
-        ytdlpPath = File(ytdlpDir, ytdlpBin)
-        ENV_LD_LIBRARY_PATH = pythonDir.absolutePath + "/usr/lib" + ":" +
+        ENV_LD_LIBRARY_PATH = File(packagesDir, SharedLibraryStore.searchDirName).absolutePath + ":" +
+                pythonDir.absolutePath + "/usr/lib" + ":" +
                 ffmpegDir.absolutePath + "/usr/lib" + ":" +
                 aria2cDir.absolutePath + "/usr/lib"
         ENV_SSL_CERT_FILE = pythonDir.absolutePath + "/usr/etc/tls/cert.pem"
         ENV_PYTHONHOME = pythonDir.absolutePath + "/usr"
         TMPDIR = appContext.cacheDir.absolutePath
-        initPython(appContext, pythonDir)
+        outputDir = File(appContext.cacheDir, outputDirName).also { dropStaleOutput(it) }
+        archiveDir = File(baseDir, archiveDirName)
+        initPython(appContext, pythonDir, pythonManifest)
         init_ytdlp(appContext, ytdlpDir)
         initialized = true
+        YoutubeDLBytecodeCache.refreshInBackground(appContext, installation!!.current!!.binary, pythonVersion())
+    }
+
+    /* output that spilled to disk and whose response was never closed */
+    private fun dropStaleOutput(dir: File) {
+        val cutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1)
+        dir.listFiles()?.forEach { if (it.lastModified() < cutoff) it.delete() }
     }
 
     @Throws(YoutubeDLException::class)
     fun init_ytdlp(appContext: Context, ytdlpDir: File) {
         if (!ytdlpDir.exists()) ytdlpDir.mkdirs()
-        val ytdlpBinary = File(ytdlpDir, ytdlpBin)
-        if (!ytdlpBinary.exists()) {
+        val ytdlpInstallation = YoutubeDLInstallation(ytdlpDir)
+        if (ytdlpInstallation.open() == null) {
             try {
-                val inputStream =
-                    appContext.resources.openRawResource(R.raw.ytdlp) /* will be renamed to yt-dlp */
-                FileUtils.copyInputStreamToFile(inputStream, ytdlpBinary)
+                val stagingDir = ytdlpInstallation.stagingDir
+                FileUtils.deleteQuietly(stagingDir)
+                appContext.resources.openRawResource(R.raw.ytdlp).use { inputStream ->
+                    /* will be renamed to yt-dlp */
+                    InstallUtils.install(inputStream, File(stagingDir, ytdlpBin))
+                }
+                ytdlpInstallation.activate(ytdlpInstallation.add(stagingDir))
             } catch (e: Exception) {
                 FileUtils.deleteQuietly(ytdlpDir)
                 throw YoutubeDLException("failed to initialize", e)
             }
         }
+        installation = ytdlpInstallation
     }
 
+    @JvmOverloads
     @Throws(YoutubeDLException::class)
-    fun initPython(appContext: Context, pythonDir: File) {
+    fun initPython(appContext: Context, pythonDir: File, pythonManifest: Set<String>? = null) {
         val pythonLib = File(binDir, pythonLibName)
-        // using size of lib as version
-        val pythonSize = pythonLib.length().toString()
+        var pythonSize = pythonVersion()
+        // a different manifest needs a different extraction
+        if (pythonManifest != null) pythonSize += ":" + pythonManifest.hashCode()
         if (!pythonDir.exists() || shouldUpdatePython(appContext, pythonSize)) {
             FileUtils.deleteQuietly(pythonDir)
             pythonDir.mkdirs()
             try {
-                unzip(pythonLib, pythonDir)
+                val store = SharedLibraryStore(pythonDir.parentFile!!)
+                val stats = extract(pythonLib, pythonDir, pythonManifest?.let { PythonProfile.filter(it) }, store)
+                store.linkSearchDirectory()
+                if (pythonManifest != null) PythonProfile.installFallback(pythonDir, pythonLib, pythonManifest)
+                PythonProfile.lastExtraction = stats
+                Log.i(TAG, "python package: $stats")
             } catch (e: Exception) {
                 FileUtils.deleteQuietly(pythonDir)
                 throw YoutubeDLException("failed to initialize", e)
@@ -87,6 +120,15 @@ object YoutubeDL {
         }
     }
 
+    // using size of lib as version
+    internal fun pythonVersion(): String {
+        return File(binDir, pythonLibName).length().toString()
+    }
+
+    internal fun pythonBinary(): File {
+        return pythonPath!!
+    }
+
     private fun shouldUpdatePython(appContext: Context, version: String): Boolean {
         return version != SharedPrefsHelper[appContext, pythonLibVersion]
     }
@@ -109,46 +151,72 @@ object YoutubeDL {
     fun getInfo(request: YoutubeDLRequest): VideoInfo {
         request.addOption("--dump-json")
         val response = execute(request, null, null)
+        return parseVideoInfo(response)
+    }
+
+    /* parses stdout without loading it into a String first and closes the response */
+    @Throws(YoutubeDLException::class)
+    internal fun parseVideoInfo(response: YoutubeDLResponse): VideoInfo {
         val videoInfo: VideoInfo = try {
-            objectMapper.readValue(response.out, VideoInfo::class.java)
+            response.use { it.stdout.reader().use { reader -> objectMapper.readValue(reader, VideoInfo::class.java) } }
         } catch (e: IOException) {
             throw YoutubeDLException("Unable to parse video information", e)
         } ?: throw YoutubeDLException("Failed to fetch video information")
         return videoInfo
     }
 
-    private fun ignoreErrors(request: YoutubeDLRequest, out: String): Boolean {
-        return request.hasOption("--dump-json") && !out.isEmpty() && request.hasOption("--ignore-errors")
+    private fun ignoreErrors(request: YoutubeDLRequest, hasOutput: Boolean): Boolean {
+        return request.hasOption("--dump-json") && hasOutput && request.hasOption("--ignore-errors")
+    }
+
+    /* what execute throws for a process that exited with exitCode, null when it succeeded */
+    internal fun failureOf(
+        request: YoutubeDLRequest,
+        job: YoutubeDLJob,
+        exitCode: Int,
+        hasOutput: Boolean,
+        err: String
+    ): Exception? {
+        if (exitCode <= 0) return null
+        if (job.isCancelled) return CanceledException()
+        if (ignoreErrors(request, hasOutput)) return null
+        return YoutubeDLException(err, ErrorCategory.classify(err))
     }
 
     fun destroyProcessById(id: String): Boolean {
-        if (idProcessMap.containsKey(id)) {
-            val p = idProcessMap[id]
-            var alive = true
+        return JobRegistry[id]?.cancel() ?: false
+    }
 
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                alive = p!!.isAlive
-            }
-            if (alive) {
-                destroyChildProcesses(id)
-                p?.destroy()
-                idProcessMap.remove(id)
-                return true
-            }
-        }
-        return false
+    /*
+     * Stops yt-dlp and the processes it started (ffmpeg, aria2c) with SIGSTOP, keeping the
+     * download where it is. Connections may time out while paused, yt-dlp retries them.
+     */
+    fun pause(processId: String): Boolean {
+        val job = JobRegistry[processId] ?: return false
+        return QoSController.keepPaused(job) || job.pause()
     }
 
-    private fun destroyChildProcesses(id: String) : Boolean {
-        try {
-            val command = "pstree -p $id | grep -oP '\\(\\K[^\\)]+' | xargs kill"
-            val processBuilder = ProcessBuilder("/system/bin/sh", "-c", command)
-            val process = processBuilder.start()
-            val res = process.waitFor()
-            return res == 0
-        }catch (e: Exception) {
-            return false
-        }
+    fun resume(processId: String): Boolean {
+        return JobRegistry[processId]?.resume() ?: false
+    }
+
+    /* cancels every running execution whose request carries tag, returns how many */
+    fun destroyProcessesByTag(tag: String): Int {
+        return JobRegistry.tagged(tag).count { it.cancel() }
+    }
+
+    /* hosts that were rate limited and the concurrency and sleep in effect for them */
+    fun hostLimits(): List<HostLimit> {
+        return HostLimiter.limits()
+    }
+
+    /* the executions running right now, with or without a processId */
+    fun jobs(): List<YoutubeDLJob> {
+        return JobRegistry.all()
+    }
+
+    fun jobs(tag: String): List<YoutubeDLJob> {
+        return JobRegistry.tagged(tag)
     }
 
     class CanceledException : Exception()
@@ -173,6 +241,31 @@ object YoutubeDL {
         return executeImpl(request, processId, redirectErrorStream, callback)
     }
 
+    /*
+     * Like execute, but downloads that arrive within batchWindowMillis with the same options
+     * share one yt-dlp process, see DownloadBatcher. The response has the lines printed for
+     * request's url; failed items run again on their own to report their error. Cancelling a
+     * request whose batch is running only stops waiting for it.
+     */
+    @JvmOverloads
+    @Throws(YoutubeDLException::class, InterruptedException::class, CanceledException::class)
+    fun executeBatched(
+        request: YoutubeDLRequest,
+        processId: String? = null,
+        callback: ((Float, Long, String) -> Unit)? = null
+    ): YoutubeDLResponse {
+        assertInit()
+        val key = DownloadBatcher.key(request) ?: return execute(request, processId, callback)
+        return DownloadBatcher.execute(key, request, processId, callback)
+    }
+
+    /* stdout and stderr lines as yt-dlp prints them, read only as fast as they are consumed */
+    @JvmOverloads
+    fun executeStreaming(request: YoutubeDLRequest, processId: String? = null): YoutubeDLStreams {
+        assertInit()
+        return YoutubeDLStreams(request, processId)
+    }
+
     @Throws(YoutubeDLException::class, InterruptedException::class, CanceledException::class)
     private fun executeImpl(
         request: YoutubeDLRequest,
@@ -180,8 +273,174 @@ object YoutubeDL {
         redirectErrorStream: Boolean = false,
         callback: ((Float, Long, String) -> Unit)? = null
     ) : YoutubeDLResponse {
+        return executeShared(request, processId, redirectErrorStream, callback, { it.await() }) { shared ->
+            executeRestarting(request, processId, redirectErrorStream, shared, { job, millis -> job.backoff(millis) }) { execution ->
+                try {
+                    execution.waitFor()
+                } catch (e: InterruptedException) {
+                    execution.process.destroy()
+                    execution.release()
+                    throw e
+                }
+            }
+        }
+    }
+
+    /* suspends instead of blocking, cancellation destroys the process tree */
+    @Throws(YoutubeDLException::class, CanceledException::class)
+    internal suspend fun executeSuspending(
+        request: YoutubeDLRequest,
+        processId: String?,
+        redirectErrorStream: Boolean,
+        callback: ((Float, Long, String) -> Unit)?
+    ): YoutubeDLResponse {
+        return executeShared(request, processId, redirectErrorStream, callback, { it.awaitSuspending() }) { shared ->
+            executeRestarting(request, processId, redirectErrorStream, shared, { job, millis -> job.backoffSuspending(millis) }) { execution ->
+                try {
+                    execution.await()
+                } catch (e: CancellationException) {
+                    execution.release()
+                    throw e
+                }
+            }
+        }
+    }
+
+    /*
+     * Follows an identical request that is running already (see YoutubeDLRequest.singleFlight),
+     * or runs request with a callback that passes progress on to those that follow it
+     */
+    private inline fun executeShared(
+        request: YoutubeDLRequest,
+        processId: String?,
+        redirectErrorStream: Boolean,
+        noinline callback: ((Float, Long, String) -> Unit)?,
+        follow: (SingleFlight.Follower) -> YoutubeDLResponse?,
+        run: (((Float, Long, String) -> Unit)?) -> YoutubeDLResponse
+    ): YoutubeDLResponse {
+        val key = SingleFlight.key(request, redirectErrorStream) ?: return run(callback)
+        while (true) {
+            val flight = SingleFlight.lead(key)
+            if (flight == null) {
+                val follower = SingleFlight.follow(key, processId, request, callback) ?: continue
+                // null when the leader was cancelled, run it again
+                follow(follower)?.let { return it }
+                continue
+            }
+            val response = try {
+                run { progress, etaInSeconds, line ->
+                    callback?.invoke(progress, etaInSeconds, line)
+                    flight.progress(progress, etaInSeconds, line)
+                }
+            } catch (e: Throwable) {
+                SingleFlight.finish(flight, null, e)
+                throw e
+            }
+            return SingleFlight.finish(flight, response, null)!!
+        }
+    }
+
+    /*
+     * Relaunches a stalled execution with --continue (see YoutubeDLRequest.stallTimeoutMillis),
+     * as well as one BandwidthManager stopped to change its rate. A failed one is launched again
+     * as its retryPolicy allows, after a backoff that a cancel cuts short.
+     */
+    private inline fun executeRestarting(
+        request: YoutubeDLRequest,
+        processId: String?,
+        redirectErrorStream: Boolean,
+        noinline callback: ((Float, Long, String) -> Unit)?,
+        backoff: (YoutubeDLJob, Long) -> Unit,
+        wait: (YoutubeDLExecution) -> Int
+    ): YoutubeDLResponse {
+        val job = admit(request, processId)
+        try {
+            var attempt = 1
+            while (true) {
+                var permit = HostLimiter.tryAcquire(request)
+                while (permit == null) {
+                    backoff(job, HostLimiter.pollMillis)
+                    if (job.isCancelled) throw CanceledException()
+                    permit = HostLimiter.tryAcquire(request)
+                }
+                val execution = launch(request, job, redirectErrorStream, permit) { command, process, release ->
+                    YoutubeDLExecution(request, job, command, process, callback, outputDir!!, release)
+                }
+                BandwidthManager.attach(job, execution)
+                val exitCode = wait(execution)
+                job.detach()
+                if (exitCode != 0 && execution.stopReason == YoutubeDLExecution.StopReason.RELIMITED && !job.isCancelled) {
+                    execution.discard()
+                    if (!request.hasOption("--continue")) request.addOption("--continue")
+                    continue
+                }
+                if (!job.isCancelled) permit.observe(execution.errorMessage())
+                if (exitCode != 0 && execution.stopReason == YoutubeDLExecution.StopReason.STALLED &&
+                    job.stallRestarts < request.maxStallRestarts && !job.isCancelled
+                ) {
+                    Log.w(TAG, "no progress for ${request.stallTimeoutMillis} ms, restarting")
+                    job.stalled(execution.partialBytes)
+                    execution.discard()
+                    if (!request.hasOption("--continue")) request.addOption("--continue")
+                    continue
+                }
+                try {
+                    return complete(execution, exitCode)
+                } catch (e: YoutubeDLException) {
+                    e.attempts = attempt
+                    if (job.isCancelled || !request.retryPolicy.shouldRetry(e.category, attempt)) throw e
+                    val delayMillis = request.retryPolicy.delayMillis(attempt)
+                    Log.w(TAG, "attempt $attempt failed (${e.category}), retrying in $delayMillis ms")
+                    backoff(job, delayMillis)
+                    if (job.isCancelled) throw CanceledException()
+                    attempt++
+                }
+            }
+        } finally {
+            dismiss(job)
+        }
+    }
+
+    /*
+     * Launches yt-dlp for request and hands the process to attach, which starts reading its
+     * output; release, with the end of stderr or null when the execution did not run to its
+     * end, gives back the process id, yt-dlp version and host permit once the process is done.
+     * Waits for the host permit until cancelled says so or the job is cancelled.
+     */
+    @Throws(YoutubeDLException::class, InterruptedException::class, CanceledException::class)
+    internal fun <T> start(
+        request: YoutubeDLRequest,
+        processId: String?,
+        redirectErrorStream: Boolean,
+        cancelled: () -> Boolean,
+        attach: (job: YoutubeDLJob, command: List<String?>, process: Process, release: (String?) -> Unit) -> T
+    ): T {
+        val job = admit(request, processId)
+        return try {
+            var permit = HostLimiter.tryAcquire(request)
+            while (permit == null) {
+                if (job.isCancelled || cancelled()) throw CanceledException()
+                Thread.sleep(HostLimiter.pollMillis)
+                permit = HostLimiter.tryAcquire(request)
+            }
+            launch(request, job, redirectErrorStream, permit) { command, process, release ->
+                attach(job, command, process) { stderr ->
+                    if (stderr != null && !job.isCancelled) permit.observe(stderr)
+                    release()
+                    dismiss(job)
+                }
+            }
+        } catch (e: Exception) {
+            dismiss(job)
+            throw e
+        }
+    }
+
+    /* registers the job under processId and completes the request's options, once per execute */
+    @Throws(YoutubeDLException::class)
+    private fun admit(request: YoutubeDLRequest, processId: String?): YoutubeDLJob {
         assertInit()
-        if (processId != null && idProcessMap.containsKey(processId)) throw YoutubeDLException("Process ID already exists")
+        val job = JobRegistry.register(processId, request)
         // disable caching unless explicitly requested
         if (!request.hasOption("--cache-dir") || request.getOption("--cache-dir") == null) {
             request.addOption("--no-cache-dir")
@@ -200,67 +459,150 @@ object YoutubeDL {
 
         /* Set ffmpeg location, See https://github.com/xibr/ytdlp-lazy/issues/1 */
         request.addOption("--ffmpeg-location", ffmpegPath!!.absolutePath)
-        val youtubeDLResponse: YoutubeDLResponse
-        val process: Process
-        val exitCode: Int
-        val outBuffer = StringBuffer() //stdout
-        val errBuffer = StringBuffer() //stderr
-        val startTime = System.currentTimeMillis()
+        QoSController.admitted(job)
+        return job
+    }
+
+    private fun dismiss(job: YoutubeDLJob) {
+        JobRegistry.unregister(job)
+        QoSController.finished(job)
+    }
+
+    /* starts one yt-dlp process for job, release gives back the yt-dlp version and host permit */
+    @Throws(YoutubeDLException::class)
+    private fun <T> launch(
+        request: YoutubeDLRequest,
+        job: YoutubeDLJob,
+        redirectErrorStream: Boolean,
+        permit: HostLimiter.Permit,
+        attach: (command: List<String?>, process: Process, release: () -> Unit) -> T
+    ): T {
+        /* the version stays in place until this execution is done, even when an update replaces it */
+        val version = installation!!.acquire()
+        val release = {
+            installation!!.release(version)
+            permit.release()
+            BandwidthManager.release(job)
+        }
         val args = request.buildCommand()
         val command: MutableList<String?> = ArrayList()
-        command.addAll(listOf(pythonPath!!.absolutePath, ytdlpPath!!.absolutePath))
+        command.addAll(PythonProfile.wrap(pythonPath!!.absolutePath, ytdlpExecutable(version).absolutePath))
+        command.addAll(HostLimiter.options(request, permit))
+        command.addAll(BandwidthManager.options(request, job))
         command.addAll(args)
-        val processBuilder = ProcessBuilder(command)
+        val processBuilder = processBuilder(command)
             .redirectErrorStream(redirectErrorStream)
 
-        processBuilder.environment().apply {
-            this["LD_LIBRARY_PATH"] = ENV_LD_LIBRARY_PATH
-            this["SSL_CERT_FILE"] = ENV_SSL_CERT_FILE
-            this["PATH"] = System.getenv("PATH") + ":" + binDir!!.absolutePath
-            this["PYTHONHOME"] = ENV_PYTHONHOME
-            this["HOME"] = ENV_PYTHONHOME
-            this["TMPDIR"] = TMPDIR
-        }
-
-        process = try {
+        val process = try {
             processBuilder.start()
         } catch (e: IOException) {
+            release()
             throw YoutubeDLException(e)
         }
-        if (processId != null) {
-            idProcessMap[processId] = process
-        }
-        val outStream = process.inputStream
-        val errStream = process.errorStream
-        val stdOutProcessor = StreamProcessExtractor(outBuffer, outStream, callback)
-        val stdErrProcessor = StreamGobbler(errBuffer, errStream)
-        exitCode = try {
-            stdOutProcessor.join()
-            stdErrProcessor.join()
-            process.waitFor()
-        } catch (e: InterruptedException) {
+        job.attach(process)
+        QoSController.started(job)
+        return try {
+            attach(command, process, release)
+        } catch (e: RuntimeException) {
             process.destroy()
-            if (processId != null) idProcessMap.remove(processId)
+            release()
             throw e
         }
-        val out = outBuffer.toString()
-        val err = errBuffer.toString()
-        if (exitCode > 0) {
-            if (processId != null && !idProcessMap.containsKey(processId))
-                throw CanceledException()
-            if (!ignoreErrors(request, out)) {
-                idProcessMap.remove(processId)
-                throw YoutubeDLException(err)
+    }
+
+    @Throws(YoutubeDLException::class, CanceledException::class)
+    private fun complete(execution: YoutubeDLExecution, exitCode: Int): YoutubeDLResponse {
+        try {
+            val (out, err) = try {
+                execution.captured()
+            } catch (e: IOException) {
+                throw YoutubeDLException("failed to write output", e)
+            }
+            val job = execution.job
+            val stopReason = execution.stopReason
+            val failure = if (exitCode == 0 || stopReason == null || job.isCancelled) {
+                failureOf(execution.request, job, exitCode, execution.hasOutput, execution.errorMessage())
+            } else if (stopReason == YoutubeDLExecution.StopReason.TIMED_OUT) {
+                YoutubeDLException("timed out after ${execution.request.timeoutMillis} ms", ErrorCategory.UNKNOWN)
+            } else {
+                YoutubeDLException(
+                    "no progress for ${execution.request.stallTimeoutMillis} ms after ${job.stallRestarts} restarts",
+                    ErrorCategory.NETWORK
+                )
             }
+            failure?.let {
+                out.discard()
+                err.discard()
+                throw it
+            }
+            // including attempts that stalled
+            val elapsedTime = System.currentTimeMillis() - job.startTime
+            return YoutubeDLResponse(execution.command, exitCode, elapsedTime, out, err).apply {
+                stallRestarts = job.stallRestarts
+                recoveredBytes = job.recoveredBytes
+            }
+        } finally {
+            execution.release()
         }
-        idProcessMap.remove(processId)
+    }
 
-        val elapsedTime = System.currentTimeMillis() - startTime
-        youtubeDLResponse = YoutubeDLResponse(command, exitCode, elapsedTime, out, err)
-        return youtubeDLResponse
+    internal fun hasInteractiveExecutions(): Boolean {
+        return QoSController.hasInteractive()
     }
 
-    @Synchronized
+    internal fun processBuilder(command: List<String?>): ProcessBuilder {
+        val processBuilder = ProcessBuilder(command)
+        processBuilder.environment().apply {
+            this["LD_LIBRARY_PATH"] = ENV_LD_LIBRARY_PATH
+            this["SSL_CERT_FILE"] = ENV_SSL_CERT_FILE
+            this["PATH"] = System.getenv("PATH") + ":" + binDir!!.absolutePath
+            this["PYTHONHOME"] = ENV_PYTHONHOME
+            this["HOME"] = ENV_PYTHONHOME
+            this["TMPDIR"] = TMPDIR
+        }
+        return processBuilder
+    }
+
+    /* prefer the bytecode-compiled copy of yt-dlp, it skips compiling every imported module */
+    private fun ytdlpExecutable(version: YoutubeDLInstallation.Version): File {
+        val compiled = YoutubeDLBytecodeCache.compiledBinary(version.dir)
+        return if (compiled.exists()) compiled else version.binary
+    }
+
+    /* how the yt-dlp binary of the last update was downloaded */
+    @Volatile
+    var lastUpdateDownload: DownloadStats? = null
+        internal set
+
+    /*
+     * Running executions an INTERACTIVE request may find before BACKGROUND ones are paused for
+     * it, 0 always pauses them and Int.MAX_VALUE never does
+     */
+    @Volatile
+    var preemptionBudget: Int = Runtime.getRuntime().availableProcessors()
+
+    /* how long executeBatched waits for more items before launching, and how many it takes at most */
+    @Volatile
+    var batchWindowMillis: Long = 200
+
+    @Volatile
+    var maxBatchSize: Int = 16
+
+    /*
+     * Bytes per second shared by all running downloads, see BandwidthManager. 0 leaves them
+     * unlimited; changes apply to the next launch and rebalance.
+     */
+    @Volatile
+    var bandwidthBudget: Long = 0
+
+    /* minimum time between two release checks of the same update channel, 0 checks every time */
+    @Volatile
+    var updateCheckIntervalMillis: Long = TimeUnit.MINUTES.toMillis(10)
+
+    /*
+     * Not synchronized on YoutubeDL: the download, staging and bytecode compile run without
+     * holding up init, only the swap of the current version takes the lock.
+     */
     @Throws(YoutubeDLException::class)
     fun updateYoutubeDL(
         appContext: Context,
@@ -306,6 +648,7 @@ object YoutubeDL {
     }
 
 
+    private val TAG = YoutubeDL::class.java.simpleName
     const val baseName = "youtubedl-android"
     private const val packagesRoot = "packages"
     private const val pythonBinName = "libpython.so"
@@ -315,6 +658,8 @@ object YoutubeDL {
     private const val ffmpegBinName = "libffmpeg.so"
     private const val quickJsBinName = "libqjs.so"
     private const val aria2cDirName = "aria2c"
+    private const val outputDirName = "yt-dlp-output"
+    private const val archiveDirName = "archives"
     const val ytdlpDirName = "yt-dlp"
     const val ytdlpBin = "yt-dlp"
     private const val pythonLibVersion = "pythonLibVersion"
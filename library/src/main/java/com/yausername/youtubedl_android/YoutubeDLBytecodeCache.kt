@@ -0,0 +1,75 @@
+package com.yausername.youtubedl_android
+
+import android.content.Context
+import android.util.Log
+import com.yausername.youtubedl_common.SharedPrefsHelper
+import com.yausername.youtubedl_common.SharedPrefsHelper.update
+import com.yausername.youtubedl_common.utils.InstallUtils
+import org.apache.commons.io.FileUtils
+import org.apache.commons.io.IOUtils
+import java.io.File
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+
+internal object YoutubeDLBytecodeCache {
+    private val TAG = YoutubeDLBytecodeCache::class.java.simpleName
+    private const val compiledBinaryName = "yt-dlp-compiled"
+    private const val compiledStampKey = "dlpCompiledStamp"
+    private val compiler: ExecutorService = Executors.newSingleThreadExecutor { runnable ->
+        Thread(runnable, "yt-dlp-compile").apply {
+            isDaemon = true
+            priority = Thread.MIN_PRIORITY
+        }
+    }
+
+    fun compiledBinary(ytdlpDir: File): File {
+        return File(ytdlpDir, compiledBinaryName)
+    }
+
+    /* refresh on a thread of its own, executions use the plain binary until the copy is there */
+    fun refreshInBackground(appContext: Context, ytdlpBinary: File, pythonVersion: String) {
+        compiler.execute { refresh(appContext, ytdlpBinary, pythonVersion) }
+    }
+
+    /*
+     * Builds a copy of the yt-dlp zipapp with precompiled bytecode next to the binary.
+     * The stamp ties the cache to both the binary and the bundled python, so it is
+     * rebuilt after an update and a failed attempt is not retried on every init.
+     */
+    @Synchronized
+    fun refresh(appContext: Context, ytdlpBinary: File, pythonVersion: String) {
+        val compiled = compiledBinary(ytdlpBinary.parentFile!!)
+        val stamp = stampOf(ytdlpBinary, pythonVersion)
+        if (stamp == SharedPrefsHelper[appContext, compiledStampKey]) return
+        /* the previous copy keeps serving executions until the new one is renamed over it */
+        val tmp = InstallUtils.tempFileFor(compiled)
+        try {
+            val script = appContext.resources.openRawResource(R.raw.compile_ytdlp).use {
+                IOUtils.toString(it, StandardCharsets.UTF_8)
+            }
+            val command = listOf(
+                YoutubeDL.pythonBinary().absolutePath, "-c", script,
+                ytdlpBinary.absolutePath, tmp.absolutePath
+            )
+            val process = YoutubeDL.processBuilder(command).redirectErrorStream(true).start()
+            val output = process.inputStream.use { IOUtils.toString(it, StandardCharsets.UTF_8) }
+            if (process.waitFor() == 0) {
+                InstallUtils.commit(tmp, compiled)
+            } else {
+                FileUtils.deleteQuietly(compiled)
+                Log.e(TAG, "failed to compile yt-dlp: $output")
+            }
+        } catch (e: Exception) {
+            FileUtils.deleteQuietly(compiled)
+            Log.e(TAG, "failed to compile yt-dlp", e)
+        } finally {
+            FileUtils.deleteQuietly(tmp)
+        }
+        update(appContext, compiledStampKey, stamp)
+    }
+
+    private fun stampOf(ytdlpBinary: File, pythonVersion: String): String {
+        return "${ytdlpBinary.length()}:${ytdlpBinary.lastModified()}:$pythonVersion"
+    }
+}
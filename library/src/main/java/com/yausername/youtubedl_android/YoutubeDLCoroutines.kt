@@ -0,0 +1,130 @@
+package com.yausername.youtubedl_android
+
+import com.yausername.youtubedl_android.YoutubeDL.CanceledException
+import com.fasterxml.jackson.core.JsonProcessingException
+import com.yausername.youtubedl_android.mapper.PlaylistEntry
+import com.yausername.youtubedl_android.mapper.VideoInfo
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.channels.awaitClose
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.buffer
+import kotlinx.coroutines.flow.callbackFlow
+import kotlinx.coroutines.launch
+
+/*
+ * Coroutine counterparts of YoutubeDL.execute and getInfo. A waiting execution suspends
+ * instead of blocking a thread, only its two output readers run on threads, and cancelling
+ * the coroutine (or the collection of executeAsFlow) destroys the process tree.
+ *
+ * They live apart from YoutubeDL because Kotlin cannot overload execute on suspend alone.
+ */
+object YoutubeDLCoroutines {
+    @Throws(YoutubeDLException::class, CanceledException::class)
+    suspend fun execute(
+        request: YoutubeDLRequest,
+        processId: String? = null,
+        redirectErrorStream: Boolean = false,
+        callback: ((Float, Long, String) -> Unit)? = null
+    ): YoutubeDLResponse {
+        return YoutubeDL.executeSuspending(request, processId, redirectErrorStream, callback)
+    }
+
+    @Throws(YoutubeDLException::class, CanceledException::class)
+    suspend fun getInfo(url: String): VideoInfo {
+        return getInfo(YoutubeDLRequest(url))
+    }
+
+    @Throws(YoutubeDLException::class, CanceledException::class)
+    suspend fun getInfo(request: YoutubeDLRequest): VideoInfo {
+        request.addOption("--dump-json")
+        return YoutubeDL.parseVideoInfo(execute(request))
+    }
+
+    /*
+     * Runs the request when collected and emits its output lines, progress changes and
+     * finally Completed; a failed execution ends the flow with its exception. Events are
+     * buffered without limit, the reader never waits for a slow collector.
+     */
+    @JvmOverloads
+    fun executeAsFlow(request: YoutubeDLRequest, processId: String? = null): Flow<ExecutionEvent> = callbackFlow {
+        var progress = -1f
+        var eta = -1L
+        val callback = { lineProgress: Float, lineEta: Long, line: String ->
+            trySend(ExecutionEvent.Output(line))
+            if (lineProgress != progress || lineEta != eta) {
+                progress = lineProgress
+                eta = lineEta
+                trySend(ExecutionEvent.Progress(lineProgress, lineEta))
+            }
+            Unit
+        }
+        val execution = launch {
+            send(ExecutionEvent.Completed(YoutubeDL.executeSuspending(request, processId, false, callback)))
+            channel.close()
+        }
+        awaitClose { execution.cancel() }
+    }.buffer(Channel.UNLIMITED)
+
+    /*
+     * getInfo for many urls, a few dozen per yt-dlp process and parallelism processes at a
+     * time, see ShardedResolver. Results are emitted as yt-dlp prints them, so not in the order
+     * of urls; a url that cannot be resolved comes with its error instead. parallelism 0 takes
+     * the cores, fewer on a device short of memory.
+     */
+    fun resolveAll(urls: List<String>, parallelism: Int = 0): Flow<ResolvedUrl> {
+        return ShardedResolver.resolve(urls, parallelism)
+    }
+
+    /*
+     * The entries of a playlist as yt-dlp lists them with --flat-playlist, each emitted as
+     * soon as its line is printed, so the first ones arrive before the whole playlist was
+     * fetched. playlistItems takes a --playlist-items range such as "1:50" for a page, lazy
+     * adds --lazy-playlist, which has yt-dlp print entries as each playlist page comes in.
+     */
+    @JvmOverloads
+    fun enumeratePlaylist(url: String, playlistItems: String? = null, lazy: Boolean = false): Flow<PlaylistEntry> {
+        val request = YoutubeDLRequest(url)
+        playlistItems?.let { request.addOption("--playlist-items", it) }
+        return enumeratePlaylist(request, lazy)
+    }
+
+    /* the same for the url of request, with its options, e.g. cookies; request is left as it is */
+    fun enumeratePlaylist(request: YoutubeDLRequest, lazy: Boolean = false): Flow<PlaylistEntry> = callbackFlow {
+        val listing = request.copy(request.urls)
+        listing.addOption("--flat-playlist").addOption("--dump-json")
+        if (lazy) listing.addOption("--lazy-playlist")
+        listing.outSink = OutputSink.discard()
+        val callback = { _: Float, _: Long, line: String ->
+            if (line.startsWith("{")) {
+                val entry = try {
+                    YoutubeDL.objectMapper.readValue(line, PlaylistEntry::class.java)
+                } catch (e: JsonProcessingException) {
+                    null
+                }
+                entry?.let { trySend(it) }
+            }
+            Unit
+        }
+        val execution = launch {
+            YoutubeDL.executeSuspending(listing, null, false, callback).close()
+            channel.close()
+        }
+        awaitClose { execution.cancel() }
+    }.buffer(Channel.UNLIMITED)
+
+    /*
+     * Downloads the entries of the playlist request points at parallelism at a time, see
+     * PlaylistDownloader; callback gets the progress over the whole playlist. Entries that
+     * failed are in the result, running it again downloads only what is still missing. The
+     * download archive is request's --download-archive, or one kept in noBackupFilesDir across
+     * runs. A file or callback sink of request gets the lines of all entries.
+     */
+    @Throws(YoutubeDLException::class, CanceledException::class)
+    suspend fun downloadPlaylist(
+        request: YoutubeDLRequest,
+        parallelism: Int = 3,
+        callback: ((Float, Long, String) -> Unit)? = null
+    ): PlaylistResult {
+        return PlaylistDownloader.download(request, parallelism, callback)
+    }
+}
@@ -4,4 +4,16 @@ class YoutubeDLException : Exception {
     constructor(message: String?) : super(message) {}
     constructor(message: String?, e: Throwable?) : super(message, e) {}
     constructor(e: Throwable?) : super(e) {}
-}
\ No newline at end of file
+
+    internal constructor(message: String?, category: ErrorCategory) : super(message) {
+        this.category = category
+    }
+
+    /* for a failed execution, what yt-dlp reported; UNKNOWN for other failures */
+    var category = ErrorCategory.UNKNOWN
+        private set
+
+    /* launches it took to fail, more than 1 when the request's RetryPolicy retried */
+    var attempts = 1
+        internal set
+}
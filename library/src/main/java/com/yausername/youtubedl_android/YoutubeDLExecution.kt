@@ -0,0 +1,189 @@
+package com.yausername.youtubedl_android
+
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.suspendCancellableCoroutine
+import kotlinx.coroutines.withContext
+import java.io.File
+import java.io.IOException
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.regex.Pattern
+import kotlin.coroutines.resume
+
+/*
+ * A started yt-dlp process and the two threads reading its output. The readers report when
+ * both streams are closed, which happens as the process exits, so a coroutine awaiting an
+ * execution suspends without parking a thread of its own.
+ */
+internal class YoutubeDLExecution(
+    val request: YoutubeDLRequest,
+    val job: YoutubeDLJob,
+    val command: List<String?>,
+    val process: Process,
+    callback: ((Float, Long, String) -> Unit)?,
+    spillDir: File,
+    private val onRelease: () -> Unit
+) {
+    val startTime = System.currentTimeMillis()
+    private val outTarget = request.outSink.open(spillDir)
+    private val errTarget = request.errSink.open(spillDir)
+    // whatever errSink keeps, failures report the end of stderr
+    private val errTail = OutputSink.tail(errTailLines).open(spillDir)
+    private val openStreams = AtomicInteger(2)
+    private val released = AtomicBoolean()
+    private val closedListeners = ArrayList<() -> Unit>()
+    private var closed = false
+
+    @Volatile
+    private var lastActivity = startTime
+    private var lastProgress = -1f
+
+    /* bytes of the file being downloaded, what a relaunch with --continue does not fetch again */
+    @Volatile
+    var partialBytes = 0L
+        private set
+
+    /* set when the watchdog or BandwidthManager killed the process */
+    @Volatile
+    var stopReason: StopReason? = null
+        private set
+
+    private val stdOutProcessor = StreamProcessExtractor(outTarget, process.inputStream, { progress, eta, line ->
+        job.progress(progress, eta)
+        activity(progress, line)
+        callback?.invoke(progress, eta, line)
+    }, ::streamClosed)
+    private val stdErrProcessor = StreamGobbler(OutputSink.Tee(errTarget, errTail), process.errorStream, ::streamClosed)
+    private val watchdog = ExecutionWatchdog.watch(this)
+
+    val hasOutput: Boolean
+        get() = outTarget.length > 0
+
+    /* call once both streams are closed */
+    @Throws(IOException::class)
+    fun captured(): Pair<CapturedOutput, CapturedOutput> {
+        val out = outTarget.finish()
+        val err = errTarget.finish()
+        val error = outTarget.error ?: errTarget.error ?: return out to err
+        out.discard()
+        err.discard()
+        throw error
+    }
+
+    fun errorMessage(): String {
+        return errTail.finish().text()
+    }
+
+    @Throws(InterruptedException::class)
+    fun waitFor(): Int {
+        stdOutProcessor.join()
+        stdErrProcessor.join()
+        return process.waitFor()
+    }
+
+    /* cancelling the awaiting coroutine destroys the process tree */
+    suspend fun await(): Int {
+        suspendCancellableCoroutine<Unit> { continuation ->
+            whenClosed { continuation.resume(Unit) }
+            continuation.invokeOnCancellation { ProcessTree.destroy(process) }
+        }
+        // the streams closed as the process exited, what is left of the wait is short
+        return withContext(Dispatchers.IO) { process.waitFor() }
+    }
+
+    /* gives back what starting the execution took (process id, yt-dlp version), once */
+    fun release() {
+        if (!released.compareAndSet(false, true)) return
+        watchdog?.cancel(false)
+        onRelease()
+    }
+
+    /* drops a stalled attempt before it is launched again */
+    fun discard() {
+        outTarget.finish().discard()
+        errTarget.finish().discard()
+        release()
+    }
+
+    fun checkTimeouts() {
+        synchronized(this) {
+            if (stopReason != null) return
+            val now = System.currentTimeMillis()
+            // a paused process makes no progress on purpose
+            if (job.isPaused) lastActivity = now
+            stopReason = when {
+                request.timeoutMillis > 0 && job.runningMillis(now) > request.timeoutMillis -> StopReason.TIMED_OUT
+                request.stallTimeoutMillis > 0 && now - lastActivity > request.stallTimeoutMillis -> StopReason.STALLED
+                else -> return
+            }
+        }
+        ProcessTree.destroy(process)
+    }
+
+    /* kills the process to have it launched again with the --limit-rate of the moment */
+    fun relimit() {
+        synchronized(this) {
+            if (stopReason != null) return
+            stopReason = StopReason.RELIMITED
+        }
+        ProcessTree.destroy(process)
+    }
+
+    /*
+     * Progress lines that repeat the same progress are no activity, yt-dlp keeps printing them
+     * on a dead connection and aria2c prints its summary every second regardless.
+     */
+    private fun activity(progress: Float, line: String) {
+        val matcher = downloadProgress.matcher(line)
+        if (matcher.find()) {
+            val size = matcher.group(2)!!.toDouble() * unitBytes(matcher.group(3))
+            val bytes = (matcher.group(1)!!.toDouble() / 100 * size).toLong()
+            if (bytes != partialBytes) lastActivity = System.currentTimeMillis()
+            partialBytes = bytes
+            val speed = downloadSpeed.matcher(line)
+            // the line that reports 100% has the average speed, there is nothing left to limit
+            if (matcher.group(1)!!.toDouble() >= 100) job.speed(-1)
+            else if (speed.find()) job.speed((speed.group(1)!!.toDouble() * unitBytes(speed.group(2))).toLong())
+        } else if (!line.startsWith("[#") || progress != lastProgress) {
+            lastActivity = System.currentTimeMillis()
+        }
+        lastProgress = progress
+    }
+
+    private fun unitBytes(unit: String?): Double {
+        return when (unit) {
+            "Ki" -> 1024.0
+            "Mi" -> 1024.0 * 1024
+            "Gi" -> 1024.0 * 1024 * 1024
+            "Ti" -> 1024.0 * 1024 * 1024 * 1024
+            else -> 1.0
+        }
+    }
+
+    private fun whenClosed(listener: () -> Unit) {
+        val alreadyClosed = synchronized(closedListeners) {
+            if (!closed) closedListeners.add(listener)
+            closed
+        }
+        if (alreadyClosed) listener()
+    }
+
+    private fun streamClosed() {
+        if (openStreams.decrementAndGet() > 0) return
+        val listeners = synchronized(closedListeners) {
+            closed = true
+            ArrayList(closedListeners).also { closedListeners.clear() }
+        }
+        for (listener in listeners) listener()
+    }
+
+    enum class StopReason {
+        TIMED_OUT, STALLED, RELIMITED
+    }
+
+    companion object {
+        private const val errTailLines = 100
+        private val downloadProgress = Pattern.compile("\\[download]\\s+(\\d+(?:\\.\\d+)?)% of\\s+~?\\s*(\\d+(?:\\.\\d+)?)([KMGT]i)?B")
+        private val downloadSpeed = Pattern.compile(" at\\s+(\\d+(?:\\.\\d+)?)([KMGT]i)?B/s")
+    }
+}
@@ -0,0 +1,115 @@
+package com.yausername.youtubedl_android
+
+import com.yausername.youtubedl_common.utils.InstallUtils
+import org.apache.commons.io.FileUtils
+import java.io.File
+import java.io.IOException
+
+/*
+ * yt-dlp lives in versions/<n>/ below the yt-dlp dir, and the current file names the version
+ * new executions start with. An execution leases the version it started with, so an update
+ * swaps current without waiting for running ones (python reads the zipapp lazily, replacing
+ * it underneath them breaks their later imports) and a replaced version is deleted once its
+ * last lease is released.
+ */
+internal class YoutubeDLInstallation(private val ytdlpDir: File) {
+    private val versionsDir = File(ytdlpDir, versionsDirName)
+    private val currentFile = File(ytdlpDir, currentFileName)
+    private val leases = HashMap<Int, Int>()
+
+    @Volatile
+    var current: Version? = null
+        private set
+
+    inner class Version(val number: Int) {
+        val dir = File(versionsDir, number.toString())
+        val binary = File(dir, YoutubeDL.ytdlpBin)
+
+        override fun equals(other: Any?): Boolean = other is Version && other.number == number
+        override fun hashCode(): Int = number
+        override fun toString(): String = "yt-dlp version $number"
+    }
+
+    /* where an update assembles the next version, a partial download there is resumed */
+    val stagingDir: File
+        get() = File(ytdlpDir, stagingDirName)
+
+    /*
+     * Loads the current version, moving an installation of the flat layout into the first
+     * version, and drops every other version: executions of an earlier process are gone.
+     */
+    @Synchronized
+    fun open(): Version? {
+        val number = if (currentFile.exists()) currentFile.readText().trim().toIntOrNull() else null
+        var version = number?.let { Version(it) }?.takeIf { it.binary.exists() }
+        if (version == null) {
+            val legacy = File(ytdlpDir, YoutubeDL.ytdlpBin)
+            if (legacy.isFile) {
+                val legacyDir = File(ytdlpDir, "legacy.installing")
+                FileUtils.deleteQuietly(legacyDir)
+                legacyDir.mkdirs()
+                InstallUtils.commit(legacy, File(legacyDir, YoutubeDL.ytdlpBin))
+                val compiled = YoutubeDLBytecodeCache.compiledBinary(ytdlpDir)
+                if (compiled.exists()) InstallUtils.commit(compiled, YoutubeDLBytecodeCache.compiledBinary(legacyDir))
+                version = add(legacyDir)
+                writeCurrent(version)
+            }
+        }
+        current = version
+        versionsDir.listFiles()?.forEach {
+            if (it.name != version?.number?.toString()) FileUtils.deleteQuietly(it)
+        }
+        return version
+    }
+
+    /* moves an assembled directory in as a new version, it is not current yet */
+    @Synchronized
+    @Throws(IOException::class)
+    fun add(assembled: File): Version {
+        versionsDir.mkdirs()
+        val last = versionsDir.list()?.mapNotNull { it.toIntOrNull() }?.maxOrNull() ?: 0
+        val version = Version(last + 1)
+        InstallUtils.commit(assembled, version.dir)
+        return version
+    }
+
+    /* makes version the one new executions start with */
+    @Synchronized
+    @Throws(IOException::class)
+    fun activate(version: Version) {
+        writeCurrent(version)
+        val previous = current
+        current = version
+        if (previous != null && previous != version && !leases.containsKey(previous.number)) {
+            FileUtils.deleteQuietly(previous.dir)
+        }
+    }
+
+    @Synchronized
+    fun acquire(): Version {
+        val version = current ?: throw IllegalStateException("yt-dlp is not installed")
+        leases[version.number] = (leases[version.number] ?: 0) + 1
+        return version
+    }
+
+    @Synchronized
+    fun release(version: Version) {
+        val count = (leases[version.number] ?: return) - 1
+        if (count > 0) {
+            leases[version.number] = count
+            return
+        }
+        leases.remove(version.number)
+        if (version != current) FileUtils.deleteQuietly(version.dir)
+    }
+
+    private fun writeCurrent(version: Version) {
+        InstallUtils.install(version.number.toString().byteInputStream(), currentFile)
+    }
+
+    companion object {
+        private const val versionsDirName = "versions"
+        private const val currentFileName = "current"
+        private const val stagingDirName = "staging"
+    }
+}
@@ -0,0 +1,184 @@
+package com.yausername.youtubedl_android
+
+import android.os.Build
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.withTimeoutOrNull
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/*
+ * A running execution, see YoutubeDL.jobs. id is the processId it was started with, null
+ * when it had none. pid and progress stay -1 until the process started and reported any.
+ */
+class YoutubeDLJob internal constructor(
+    val id: String?,
+    val tags: Set<String>,
+    val qos: YoutubeDLRequest.QoS
+) {
+    val startTime = System.currentTimeMillis()
+
+    @Volatile
+    var pid = -1
+        private set
+
+    @Volatile
+    var progress = -1f
+        private set
+
+    @Volatile
+    var etaInSeconds = -1L
+        private set
+
+    @Volatile
+    var isCancelled = false
+        private set
+
+    @Volatile
+    var isPaused = false
+        private set
+
+    /* time taken to signal the whole process tree on the last pause and resume */
+    @Volatile
+    var lastPauseLatencyNanos = 0L
+        private set
+
+    @Volatile
+    var lastResumeLatencyNanos = 0L
+        private set
+
+    /* total time spent paused, not counting a pause still in progress */
+    @Volatile
+    var pausedMillis = 0L
+        private set
+
+    private var pausedAt = 0L
+
+    /* relaunches after a stall and the bytes they did not have to download again */
+    @Volatile
+    var stallRestarts = 0
+        private set
+
+    @Volatile
+    var recoveredBytes = 0L
+        private set
+
+    /* the --limit-rate given by YoutubeDL.bandwidthBudget, 0 when it has none */
+    @Volatile
+    var rateLimit = 0L
+        internal set
+
+    /* as last reported by yt-dlp, -1 until it reported any */
+    @Volatile
+    var speedBytesPerSecond = -1L
+        private set
+
+    private var process: Process? = null
+
+    /* called once when the job is cancelled, how a job without a process of its own stops */
+    internal var cancelListener: (() -> Unit)? = null
+
+    // signalled by cancel, so that a backoff between launches ends with it
+    private val cancelled = CountDownLatch(1)
+    private val cancelledSuspending = CompletableDeferred<Unit>()
+
+    /* a job cancelled before its process started kills it right away */
+    internal fun attach(process: Process) {
+        synchronized(this) {
+            this.process = process
+            pid = ProcessTree.pid(process) ?: -1
+            if (!isCancelled) return
+        }
+        ProcessTree.destroy(process)
+    }
+
+    /*
+     * between a process that exited and the next launch, cancel has no process to kill, and
+     * the next process starts unpaused whatever state this one was left in
+     */
+    @Synchronized
+    internal fun detach() {
+        process = null
+        pid = -1
+        speedBytesPerSecond = -1
+        if (isPaused) {
+            pausedMillis += System.currentTimeMillis() - pausedAt
+            isPaused = false
+        }
+    }
+
+    /* time since start not spent paused */
+    @Synchronized
+    internal fun runningMillis(now: Long): Long {
+        return now - startTime - pausedMillis - if (isPaused) now - pausedAt else 0
+    }
+
+    internal fun stalled(partialBytes: Long) {
+        stallRestarts++
+        recoveredBytes += partialBytes
+    }
+
+    internal fun progress(progress: Float, etaInSeconds: Long) {
+        this.progress = progress
+        this.etaInSeconds = etaInSeconds
+    }
+
+    internal fun speed(bytesPerSecond: Long) {
+        speedBytesPerSecond = bytesPerSecond
+    }
+
+    /* false when it was cancelled already or its process has exited */
+    internal fun cancel(): Boolean {
+        val process = synchronized(this) {
+            if (isCancelled) return false
+            process?.let { if (!isAlive(it)) return false }
+            isCancelled = true
+            // a stopped process would only see the termination once continued
+            if (isPaused) resume()
+            process
+        }
+        process?.let { ProcessTree.destroy(it) }
+        cancelled.countDown()
+        cancelledSuspending.complete(Unit)
+        cancelListener?.invoke()
+        return true
+    }
+
+    /* waits millis between two launches, or until the job is cancelled */
+    @Throws(InterruptedException::class)
+    internal fun backoff(millis: Long) {
+        cancelled.await(millis, TimeUnit.MILLISECONDS)
+    }
+
+    internal suspend fun backoffSuspending(millis: Long) {
+        withTimeoutOrNull(millis) { cancelledSuspending.await() }
+    }
+
+    /* false when the process has not started yet, has exited or is already paused */
+    @Synchronized
+    internal fun pause(): Boolean {
+        val process = process ?: return false
+        if (isPaused || isCancelled || !isAlive(process)) return false
+        val start = System.nanoTime()
+        if (!ProcessTree.stop(process)) return false
+        lastPauseLatencyNanos = System.nanoTime() - start
+        pausedAt = System.currentTimeMillis()
+        isPaused = true
+        return true
+    }
+
+    @Synchronized
+    internal fun resume(): Boolean {
+        val process = process ?: return false
+        if (!isPaused) return false
+        val start = System.nanoTime()
+        ProcessTree.resume(process)
+        lastResumeLatencyNanos = System.nanoTime() - start
+        pausedMillis += System.currentTimeMillis() - pausedAt
+        isPaused = false
+        return true
+    }
+
+    private fun isAlive(process: Process): Boolean {
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.O || process.isAlive
+    }
+}
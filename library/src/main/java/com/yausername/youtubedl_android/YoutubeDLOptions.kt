@@ -59,9 +59,22 @@ class YoutubeDLOptions {
         return options.containsKey(option)
     }
 
+    internal fun addAll(other: YoutubeDLOptions) {
+        for ((option, value) in other.options) options.getOrPut(option) { ArrayList() }.addAll(value)
+    }
+
     fun buildOptions(): List<String> {
+        return build(options.entries)
+    }
+
+    /* the same options in a fixed order, whatever order they were added in */
+    internal fun buildSortedOptions(): List<String> {
+        return build(options.entries.sortedBy { it.key })
+    }
+
+    private fun build(entries: Collection<Map.Entry<String, List<String>>>): List<String> {
         val commandList: MutableList<String> = mutableListOf()
-        for ((option, value) in options) {
+        for ((option, value) in entries) {
             for (argument in value) {
                 commandList.add(option)
                 if (argument.isNotEmpty()) commandList.add(argument)
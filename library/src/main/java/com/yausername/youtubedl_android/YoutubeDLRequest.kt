@@ -1,9 +1,42 @@
 package com.yausername.youtubedl_android
 
+import java.net.URI
+import java.net.URISyntaxException
+
 class YoutubeDLRequest {
-    private val urls: List<String>
+    internal val urls: List<String>
     private val options = YoutubeDLOptions()
     private val customCommandList: MutableList<String> = ArrayList()
+    private val tagSet: MutableSet<String> = LinkedHashSet()
+
+    /* how urgently the caller waits for this request, see QoS */
+    var qos = QoS.DEFAULT
+
+    /* where stdout and stderr go, they end up in YoutubeDLResponse.stdout and stderr */
+    var outSink: OutputSink = OutputSink.memory()
+    var errSink: OutputSink = OutputSink.memory()
+
+    /* execute fails with a YoutubeDLException once it has been running this long, not counting time paused, 0 never */
+    var timeoutMillis = 0L
+
+    /*
+     * Without download progress for this long an execution counts as stalled, 0 never. It is
+     * killed and relaunched with --continue, reusing its .part files, up to maxStallRestarts
+     * times, then execute fails. Time spent paused does not count.
+     */
+    var stallTimeoutMillis = 0L
+    var maxStallRestarts = 3
+
+    /* relaunches after transient failures (see ErrorCategory), none by default */
+    var retryPolicy = RetryPolicy.NONE
+
+    /*
+     * When set, an execute of a request with the same urls, options, qos, timeouts and
+     * retryPolicy as one already running that set it too attaches to its process instead of
+     * launching another, getting the same progress and response, see YoutubeDL.execute. Only
+     * requests whose sinks are memory, the default, or spill are shared.
+     */
+    var singleFlight = false
 
     constructor(url: String) {
         urls = listOf(url)
@@ -33,6 +66,15 @@ class YoutubeDLRequest {
         return this
     }
 
+    /* groups executions, e.g. "playlist-123" or "background", see YoutubeDL.destroyProcessesByTag */
+    fun addTag(tag: String): YoutubeDLRequest {
+        tagSet.add(tag)
+        return this
+    }
+
+    val tags: Set<String>
+        get() = tagSet.toSet()
+
     fun getOption(option: String): String? {
         return options.getArgument(option)
     }
@@ -45,6 +87,41 @@ class YoutubeDLRequest {
         return options.hasOption(option)
     }
 
+    /* the urls with scheme and host lowercased and without fragment, then the sorted options */
+    internal fun fingerprint(): String {
+        val key = StringBuilder()
+        for (url in urls) key.append(normalize(url)).append('\n')
+        return key.append(optionsFingerprint()).toString()
+    }
+
+    /* what decides how an execution is watched and relaunched, besides its command */
+    internal fun settingsFingerprint(): String {
+        return "$qos $timeoutMillis $stallTimeoutMillis $maxStallRestarts $retryPolicy"
+    }
+
+    internal fun optionsFingerprint(): String {
+        val key = StringBuilder()
+        for (part in options.buildSortedOptions() + customCommandList) key.append(part).append('\u0000')
+        return key.toString()
+    }
+
+    /* the same options and settings for other urls */
+    internal fun copy(urls: List<String>, withTags: Boolean = true): YoutubeDLRequest {
+        val copy = YoutubeDLRequest(urls)
+        copy.options.addAll(options)
+        copy.customCommandList.addAll(customCommandList)
+        if (withTags) copy.tagSet.addAll(tagSet)
+        copy.qos = qos
+        copy.timeoutMillis = timeoutMillis
+        copy.stallTimeoutMillis = stallTimeoutMillis
+        copy.maxStallRestarts = maxStallRestarts
+        copy.retryPolicy = retryPolicy
+        copy.singleFlight = singleFlight
+        copy.outSink = outSink
+        copy.errSink = errSink
+        return copy
+    }
+
     fun buildCommand(): List<String> {
         val commandList: MutableList<String> = ArrayList()
         commandList.addAll(options.buildOptions())
@@ -52,4 +129,28 @@ class YoutubeDLRequest {
         commandList.addAll(urls)
         return commandList
     }
-}
\ No newline at end of file
+
+    /*
+     * INTERACTIVE: a user is waiting on the result, e.g. getInfo behind a screen
+     * DEFAULT: ordinary downloads
+     * BACKGROUND: work nobody waits on, e.g. prefetching
+     */
+    enum class QoS {
+        INTERACTIVE, DEFAULT, BACKGROUND
+    }
+
+    companion object {
+        internal fun normalize(url: String): String {
+            return try {
+                val uri = URI(url.trim())
+                if (uri.scheme == null || uri.host == null) return url.trim()
+                // user info is case sensitive, only scheme and host are not
+                val authority = (uri.rawUserInfo?.let { "$it@" } ?: "") + uri.host.lowercase() +
+                        (if (uri.port != -1) ":${uri.port}" else "")
+                uri.scheme.lowercase() + "://" + authority + (uri.rawPath ?: "") + (uri.rawQuery?.let { "?$it" } ?: "")
+            } catch (e: URISyntaxException) {
+                url.trim()
+            }
+        }
+    }
+}
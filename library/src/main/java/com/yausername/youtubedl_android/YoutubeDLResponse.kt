@@ -1,9 +1,33 @@
 package com.yausername.youtubedl_android
 
-class YoutubeDLResponse(
+import java.io.Closeable
+
+/*
+ * out and err are read from stdout and stderr on first use, which loads output that spilled
+ * to a file into memory; stream it with stdout.reader() instead. close deletes spilled files,
+ * read them before closing.
+ */
+class YoutubeDLResponse internal constructor(
     val command: List<String?>,
     val exitCode: Int,
     val elapsedTime: Long,
-    val out: String,
-    val err: String
-)
\ No newline at end of file
+    val stdout: CapturedOutput,
+    val stderr: CapturedOutput
+) : Closeable {
+    constructor(command: List<String?>, exitCode: Int, elapsedTime: Long, out: String, err: String) :
+            this(command, exitCode, elapsedTime, CapturedOutput.of(out), CapturedOutput.of(err))
+
+    /* see YoutubeDLRequest.stallTimeoutMillis */
+    var stallRestarts = 0
+        internal set
+    var recoveredBytes = 0L
+        internal set
+
+    val out: String by lazy { stdout.text() }
+    val err: String by lazy { stderr.text() }
+
+    override fun close() {
+        stdout.discard()
+        stderr.discard()
+    }
+}
@@ -0,0 +1,26 @@
+package com.yausername.youtubedl_android
+
+import io.reactivex.Flowable
+
+/*
+ * RxJava 2 views of YoutubeDLStreams. The library only compiles against RxJava, use these
+ * when the app depends on it.
+ */
+object YoutubeDLRx {
+    /* a new execution for every subscription, emitting its stdout lines */
+    @JvmStatic
+    @JvmOverloads
+    fun executeStreaming(request: YoutubeDLRequest, processId: String? = null): Flowable<String> {
+        return Flowable.defer { YoutubeDL.executeStreaming(request, processId).stdout }
+    }
+
+    @JvmStatic
+    fun stdout(streams: YoutubeDLStreams): Flowable<String> {
+        return Flowable.fromPublisher(streams.stdout)
+    }
+
+    @JvmStatic
+    fun stderr(streams: YoutubeDLStreams): Flowable<String> {
+        return Flowable.fromPublisher(streams.stderr)
+    }
+}
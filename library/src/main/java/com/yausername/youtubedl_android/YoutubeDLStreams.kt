@@ -0,0 +1,207 @@
+package com.yausername.youtubedl_android
+
+import org.reactivestreams.Publisher
+import org.reactivestreams.Subscriber
+import org.reactivestreams.Subscription
+import java.io.BufferedReader
+import java.io.IOException
+import java.io.InputStream
+import java.io.InputStreamReader
+import java.nio.charset.StandardCharsets
+import java.util.ArrayDeque
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicReference
+
+/*
+ * stdout and stderr of an execution as Reactive Streams publishers of lines. A stdout line
+ * is only read once the subscriber requested it: without demand the output stays in the
+ * pipe and yt-dlp blocks writing, so memory stays bounded however much it prints.
+ *
+ * Subscribing to stdout starts the execution. stdout completes when yt-dlp exits, or fails
+ * with the exception execute would have thrown, and cancelling it destroys the process tree.
+ * stderr is read on demand as well while it has a subscriber, otherwise it is read and
+ * dropped so yt-dlp never blocks on it; subscribe to it first to see all of it. Each
+ * publisher takes a single subscriber.
+ *
+ * The execution is launched on a thread of its own, subscribe returns at once even while it
+ * waits for a HostLimiter permit. A stream runs once, as the subscriber reads it: timeouts,
+ * the stall watchdog and retryPolicy do not apply, and the --limit-rate share of
+ * bandwidthBudget it starts with is not rebalanced. A 429 at its end still counts for the host.
+ */
+class YoutubeDLStreams internal constructor(
+    private val request: YoutubeDLRequest,
+    private val processId: String?
+) {
+    private val stdoutSubscription = AtomicReference<LineSubscription?>()
+    private val stderrSubscription = AtomicReference<LineSubscription?>()
+    private val errTail = ArrayDeque<String>()
+
+    @Volatile
+    private var process: Process? = null
+
+    val stdout: Publisher<String> = Publisher { subscribe(stdoutSubscription, it) }
+    val stderr: Publisher<String> = Publisher { subscribe(stderrSubscription, it) }
+
+    private fun subscribe(slot: AtomicReference<LineSubscription?>, subscriber: Subscriber<in String>) {
+        val subscription = LineSubscription(subscriber, slot === stdoutSubscription)
+        if (!slot.compareAndSet(null, subscription)) {
+            subscriber.onSubscribe(subscription)
+            subscription.fail(IllegalStateException("only one subscriber is supported"))
+            return
+        }
+        subscriber.onSubscribe(subscription)
+        if (slot === stdoutSubscription) launcher.execute { launch(subscription) }
+    }
+
+    private fun launch(subscription: LineSubscription) {
+        try {
+            YoutubeDL.start(request, processId, false, { subscription.cancelled }) { job, _, process, release ->
+                this.process = process
+                if (subscription.cancelled) ProcessTree.destroy(process)
+                val errReader = Thread({ readStderr(process.errorStream) }, "yt-dlp-stderr")
+                errReader.start()
+                Thread({ readStdout(job, process, subscription, errReader, release) }, "yt-dlp-stdout").start()
+            }
+        } catch (e: Exception) {
+            subscription.fail(e)
+        }
+    }
+
+    private fun readStdout(
+        job: YoutubeDLJob,
+        process: Process,
+        subscription: LineSubscription,
+        errReader: Thread,
+        release: (String?) -> Unit
+    ) {
+        var hasOutput = false
+        var failure: Throwable? = null
+        var err: String? = null
+        try {
+            BufferedReader(InputStreamReader(process.inputStream, StandardCharsets.UTF_8)).use { reader ->
+                while (subscription.awaitDemand()) {
+                    val line = reader.readLine() ?: break
+                    hasOutput = true
+                    subscription.next(line)
+                }
+            }
+            val exitCode = process.waitFor()
+            // a stderr subscriber that stops requesting must not hold up the end of stdout
+            errReader.join(errJoinMillis)
+            val tail = synchronized(errTail) { errTail.joinToString("\n") }
+            err = tail
+            failure = YoutubeDL.failureOf(request, job, exitCode, hasOutput, tail)
+        } catch (e: IOException) {
+            // also how the pipe ends when the process tree is destroyed
+            failure = e
+        } catch (e: InterruptedException) {
+            failure = e
+        } finally {
+            release(err)
+        }
+        if (failure != null) subscription.fail(failure) else subscription.complete()
+    }
+
+    private fun readStderr(stream: InputStream) {
+        var failure: Throwable? = null
+        try {
+            BufferedReader(InputStreamReader(stream, StandardCharsets.UTF_8)).use { reader ->
+                while (true) {
+                    // without a live subscriber lines are read and dropped
+                    val subscription = stderrSubscription.get()?.takeIf { it.awaitDemand() }
+                    val line = reader.readLine() ?: break
+                    synchronized(errTail) {
+                        errTail.addLast(line)
+                        if (errTail.size > errTailLines) errTail.removeFirst()
+                    }
+                    subscription?.next(line)
+                }
+            }
+        } catch (e: IOException) {
+            failure = e
+        } catch (e: InterruptedException) {
+            failure = e
+        }
+        stderrSubscription.get()?.let { if (failure != null) it.fail(failure) else it.complete() }
+    }
+
+    private inner class LineSubscription(
+        private val subscriber: Subscriber<in String>,
+        private val isStdout: Boolean
+    ) : Subscription {
+        private val lock = Object()
+        private var demand = 0L
+        private var invalidRequest: Long? = null
+
+        @Volatile
+        var cancelled = false
+            private set
+
+        override fun request(n: Long) {
+            synchronized(lock) {
+                if (cancelled) return
+                if (n <= 0) invalidRequest = n
+                else demand = if (demand + n < 0) Long.MAX_VALUE else demand + n
+                lock.notifyAll()
+            }
+        }
+
+        override fun cancel() {
+            synchronized(lock) {
+                if (cancelled) return
+                cancelled = true
+                lock.notifyAll()
+            }
+            if (isStdout) process?.let { ProcessTree.destroy(it) }
+        }
+
+        /* blocks the reading thread until a line is requested, false once nobody takes lines */
+        fun awaitDemand(): Boolean {
+            val invalid: Long
+            synchronized(lock) {
+                while (demand == 0L && !cancelled && invalidRequest == null) lock.wait()
+                if (invalidRequest == null) {
+                    if (cancelled) return false
+                    if (demand != Long.MAX_VALUE) demand--
+                    return true
+                }
+                invalid = invalidRequest!!
+                invalidRequest = null
+            }
+            fail(IllegalArgumentException("request($invalid): demand must be positive (§3.9)"))
+            if (isStdout) process?.let { ProcessTree.destroy(it) }
+            return false
+        }
+
+        fun next(line: String) {
+            if (!cancelled) subscriber.onNext(line)
+        }
+
+        fun complete() {
+            if (terminate()) subscriber.onComplete()
+        }
+
+        fun fail(error: Throwable) {
+            if (terminate()) subscriber.onError(error)
+        }
+
+        /* a subscription ends once, by cancel, completion or error */
+        private fun terminate(): Boolean {
+            synchronized(lock) {
+                if (cancelled) return false
+                cancelled = true
+                lock.notifyAll()
+                return true
+            }
+        }
+    }
+
+    companion object {
+        private val launcher: ExecutorService = Executors.newCachedThreadPool { runnable ->
+            Thread(runnable, "yt-dlp-stream").apply { isDaemon = true }
+        }
+        private const val errTailLines = 100
+        private const val errJoinMillis = 1000L
+    }
+}
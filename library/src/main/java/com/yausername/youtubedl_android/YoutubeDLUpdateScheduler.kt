@@ -0,0 +1,128 @@
+package com.yausername.youtubedl_android
+
+import android.content.Context
+import android.util.Log
+import com.yausername.youtubedl_android.YoutubeDL.UpdateChannel
+import com.yausername.youtubedl_android.YoutubeDL.UpdateStatus
+import com.yausername.youtubedl_common.SharedPrefsHelper
+import com.yausername.youtubedl_common.SharedPrefsHelper.update
+import java.util.Random
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+
+/*
+ * Keeps yt-dlp up to date in the background: checks every intervalMillis, spread by
+ * +-jitter so a fleet of devices does not hit the api in lockstep, and backs off
+ * exponentially from retryMillis after failures. An update waits while interactive
+ * executions run. The time of the last check survives the process, so a restarted app
+ * does not check again right away.
+ */
+object YoutubeDLUpdateScheduler {
+    private val TAG = YoutubeDLUpdateScheduler::class.java.simpleName
+    private const val lastCheckKey = "dlpScheduledCheck"
+    private val random = Random()
+
+    private var executor: ScheduledExecutorService? = null
+    private var pending: ScheduledFuture<*>? = null
+    // written by start and the update thread, read by both
+    @Volatile
+    private var config: Config? = null
+    @Volatile
+    private var failures = 0
+
+    class Config @JvmOverloads constructor(
+        val channel: UpdateChannel = UpdateChannel.STABLE,
+        val intervalMillis: Long = TimeUnit.HOURS.toMillis(12),
+        val jitter: Double = 0.1,
+        val retryMillis: Long = TimeUnit.MINUTES.toMillis(1),
+        val deferMillis: Long = TimeUnit.SECONDS.toMillis(30)
+    )
+
+    /* status is null when the check failed */
+    class CheckResult internal constructor(
+        val status: UpdateStatus?,
+        val error: Exception?,
+        val checkedAt: Long,
+        val latencyMillis: Long,
+        val consecutiveFailures: Int,
+        val nextCheckAt: Long
+    ) {
+        override fun toString(): String {
+            return "${status ?: "failed ($error)"} in $latencyMillis ms, " +
+                    "$consecutiveFailures consecutive failures, next check at $nextCheckAt"
+        }
+    }
+
+    @Volatile
+    var lastResult: CheckResult? = null
+        private set
+
+    @JvmOverloads
+    @Synchronized
+    fun start(appContext: Context, config: Config = Config()) {
+        stop()
+        this.config = config
+        failures = 0
+        executor = Executors.newSingleThreadScheduledExecutor { runnable ->
+            Thread(runnable, "yt-dlp-update").apply {
+                isDaemon = true
+                priority = Thread.MIN_PRIORITY
+            }
+        }
+        val lastCheck = SharedPrefsHelper[appContext, lastCheckKey]?.toLongOrNull() ?: 0L
+        val due = lastCheck + config.intervalMillis - System.currentTimeMillis()
+        schedule(appContext, if (due > 0) jittered(due, config) else 0, executor)
+    }
+
+    @Synchronized
+    fun stop() {
+        pending?.cancel(false)
+        pending = null
+        executor?.shutdownNow()
+        executor = null
+    }
+
+    /* a check of a stopped (or restarted) schedule does not schedule the next one */
+    @Synchronized
+    private fun schedule(appContext: Context, delayMillis: Long, owner: ScheduledExecutorService?) {
+        val scheduler = executor ?: return
+        if (scheduler !== owner) return
+        pending = scheduler.schedule({ check(appContext, scheduler) }, delayMillis, TimeUnit.MILLISECONDS)
+    }
+
+    private fun check(appContext: Context, owner: ScheduledExecutorService) {
+        val config = config ?: return
+        if (YoutubeDL.hasInteractiveExecutions()) {
+            schedule(appContext, config.deferMillis, owner)
+            return
+        }
+        val start = System.currentTimeMillis()
+        var status: UpdateStatus? = null
+        var error: Exception? = null
+        try {
+            status = YoutubeDL.updateYoutubeDL(appContext, config.channel)
+        } catch (e: Exception) {
+            error = e
+        }
+        val latency = System.currentTimeMillis() - start
+        val delay = if (error == null) {
+            failures = 0
+            update(appContext, lastCheckKey, start.toString())
+            jittered(config.intervalMillis, config)
+        } else {
+            failures++
+            Log.e(TAG, "scheduled yt-dlp update failed", error)
+            // retryMillis, twice that, four times ... up to the regular interval
+            jittered(minOf(config.retryMillis shl minOf(failures - 1, 30), config.intervalMillis), config)
+        }
+        lastResult = CheckResult(status, error, start, latency, failures, System.currentTimeMillis() + delay)
+        schedule(appContext, delay, owner)
+    }
+
+    private fun jittered(delayMillis: Long, config: Config): Long {
+        val factor = 1 + config.jitter * (2 * random.nextDouble() - 1)
+        return (delayMillis * factor).toLong().coerceAtLeast(0)
+    }
+}
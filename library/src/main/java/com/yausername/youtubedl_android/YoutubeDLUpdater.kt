@@ -1,19 +1,24 @@
 package com.yausername.youtubedl_android
 
 import android.content.Context
-import com.fasterxml.jackson.databind.JsonNode
-import com.fasterxml.jackson.databind.node.ArrayNode
+import android.util.Log
+import com.fasterxml.jackson.core.JsonParser
+import com.fasterxml.jackson.core.JsonToken
 import com.yausername.youtubedl_android.YoutubeDL.UpdateChannel
 import com.yausername.youtubedl_android.YoutubeDL.UpdateStatus
 import com.yausername.youtubedl_android.YoutubeDL.getInstance
 import com.yausername.youtubedl_common.SharedPrefsHelper
 import com.yausername.youtubedl_common.SharedPrefsHelper.update
-import org.apache.commons.io.FileUtils
+import org.apache.commons.io.IOUtils
 import java.io.File
 import java.io.IOException
+import java.io.InputStream
+import java.net.HttpURLConnection
 import java.net.URL
+import java.nio.charset.StandardCharsets
 
 internal object YoutubeDLUpdater {
+    private val TAG = YoutubeDLUpdater::class.java.simpleName
     private const val youtubeDLStableChannelUrl =
         "https://api.github.com/repos/yt-dlp/yt-dlp/releases/latest"
     private const val youtubeDLNightlyChannelUrl =
@@ -23,34 +28,49 @@ internal object YoutubeDLUpdater {
     private const val dlpBinaryName = "yt-dlp"
     private const val dlpVersionKey = "dlpVersion"
     private const val dlpVersionNameKey = "dlpVersionName"
+    private const val dlpReleaseCheckKey = "dlpReleaseCheck:"
+    private const val checksumsAssetName = "SHA2-256SUMS"
 
+    /* the fields of a release that updating needs, assets maps asset name to download url */
+    internal class Release(val tag: String, val name: String, val assets: Map<String, String>, val etag: String?)
+
+    /* last successful check of a channel: when, the release it found and that response's etag */
+    private class CheckRecord(val checkedAt: Long, val tag: String, val etag: String?) {
+        override fun toString(): String = "$checkedAt\t$tag\t${etag ?: ""}"
+
+        companion object {
+            fun parse(value: String?): CheckRecord? {
+                val parts = value?.split('\t') ?: return null
+                if (parts.size != 3) return null
+                val checkedAt = parts[0].toLongOrNull() ?: return null
+                return CheckRecord(checkedAt, parts[1], parts[2].ifEmpty { null })
+            }
+        }
+    }
+
+    /* synchronized on the updater, two updates would share the staging dir */
+    @Synchronized
     @Throws(IOException::class, YoutubeDLException::class)
     internal fun update(
         appContext: Context?,
         youtubeDLChannel: UpdateChannel = UpdateChannel.STABLE
     ): UpdateStatus {
-        val json = checkForUpdate(appContext!!, youtubeDLChannel)
+        val release = checkForUpdate(appContext!!, youtubeDLChannel)
             ?: return UpdateStatus.ALREADY_UP_TO_DATE
-        val downloadUrl = getDownloadUrl(json)
-        val file = download(appContext, downloadUrl)
-        val ytdlpDir = getYoutubeDLDir(
-            appContext
-        )
-        val binary = File(ytdlpDir, dlpBinaryName)
-        try {
-            /* purge older version */
-            if (ytdlpDir.exists()) FileUtils.deleteDirectory(ytdlpDir)
-            /* install newer version */ytdlpDir.mkdirs()
-            FileUtils.copyFile(file, binary)
-        } catch (e: Exception) {
-            /* if something went wrong restore default version */
-            FileUtils.deleteQuietly(ytdlpDir)
-            getInstance().init_ytdlp(appContext, ytdlpDir)
-            throw YoutubeDLException(e)
-        } finally {
-            file.delete()
+        val downloadUrl = getDownloadUrl(release)
+        val installation = getInstance().installation!!
+        /* the new version is assembled aside, running executions keep the one they started with */
+        val binary = File(installation.stagingDir, dlpBinaryName)
+        val stats = ResumableDownloader.download(downloadUrl, binary, getChecksum(release))
+        getInstance().lastUpdateDownload = stats
+        Log.i(TAG, "yt-dlp ${release.tag}: $stats")
+        val version = installation.add(installation.stagingDir)
+        YoutubeDLBytecodeCache.refresh(appContext, version.binary, getInstance().pythonVersion())
+        synchronized(getInstance()) {
+            installation.activate(version)
+            updateSharedPrefs(appContext, release.tag, release.name)
         }
-        updateSharedPrefs(appContext, getTag(json), getName(json))
+        recordCheck(appContext, youtubeDLChannel, CheckRecord(System.currentTimeMillis(), release.tag, release.etag))
         return UpdateStatus.DONE
     }
 
@@ -59,50 +79,116 @@ internal object YoutubeDLUpdater {
         update(appContext, dlpVersionNameKey, name)
     }
 
+    /*
+     * Returns the release to install, or null when the installed one is current. A channel
+     * checked within updateCheckIntervalMillis is not asked again, and a repeated check sends
+     * the etag of the last response so an unchanged release costs a 304 without a body.
+     */
     @Throws(IOException::class)
-    private fun checkForUpdate(appContext: Context, youtubeDLChannel: UpdateChannel): JsonNode? {
-        val url = URL(youtubeDLChannel.apiUrl)
-        val json = YoutubeDL.objectMapper.readTree(url)
-        val newVersion = getTag(json)
-        val oldVersion = SharedPrefsHelper[appContext, dlpVersionKey]
-        return if (newVersion == oldVersion) {
-            null
-        } else json
+    private fun checkForUpdate(appContext: Context, youtubeDLChannel: UpdateChannel): Release? {
+        val installed = SharedPrefsHelper[appContext, dlpVersionKey]
+        val now = System.currentTimeMillis()
+        // a record for another release than the installed one says nothing about it
+        val record = CheckRecord.parse(SharedPrefsHelper[appContext, dlpReleaseCheckKey + youtubeDLChannel.apiUrl])
+            ?.takeIf { it.tag == installed }
+        if (record != null && now - record.checkedAt in 0 until getInstance().updateCheckIntervalMillis) return null
+        val connection = URL(youtubeDLChannel.apiUrl).openConnection() as HttpURLConnection
+        connection.connectTimeout = 5000
+        connection.readTimeout = 10000
+        connection.setRequestProperty("Accept", "application/vnd.github+json")
+        record?.etag?.let { connection.setRequestProperty("If-None-Match", it) }
+        try {
+            when (val code = connection.responseCode) {
+                HttpURLConnection.HTTP_NOT_MODIFIED -> {
+                    if (record == null) throw IOException("unexpected 304 from ${youtubeDLChannel.apiUrl}")
+                    recordCheck(appContext, youtubeDLChannel, CheckRecord(now, record.tag, record.etag))
+                    return null
+                }
+                HttpURLConnection.HTTP_OK -> {
+                    val release = connection.inputStream.use {
+                        parseRelease(it, connection.getHeaderField("ETag"), setOf(YoutubeDL.ytdlpBin, checksumsAssetName))
+                    }
+                    if (release.tag != installed) return release
+                    recordCheck(appContext, youtubeDLChannel, CheckRecord(now, release.tag, release.etag))
+                    return null
+                }
+                else -> throw IOException("release check failed with HTTP $code: ${youtubeDLChannel.apiUrl}")
+            }
+        } finally {
+            connection.disconnect()
+        }
     }
 
-    private fun getTag(json: JsonNode): String {
-        return json["tag_name"].asText()
+    private fun recordCheck(appContext: Context, youtubeDLChannel: UpdateChannel, record: CheckRecord) {
+        update(appContext, dlpReleaseCheckKey + youtubeDLChannel.apiUrl, record.toString())
     }
 
-    private fun getName(json: JsonNode): String {
-        return json["name"].asText()
+    /*
+     * Reads tag_name, name and the urls of the wanted assets from a release object, skipping
+     * everything else, and stops once they are all known (the release notes come last).
+     */
+    @Throws(IOException::class)
+    internal fun parseRelease(input: InputStream, etag: String?, wantedAssets: Set<String>): Release {
+        var tag: String? = null
+        var name: String? = null
+        val assets = HashMap<String, String>()
+        var assetsRead = false
+        YoutubeDL.objectMapper.factory.createParser(input).use { parser ->
+            if (parser.nextToken() != JsonToken.START_OBJECT) throw IOException("release is not a json object")
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                val field = parser.currentName()
+                val token = parser.nextToken()
+                when {
+                    field == "tag_name" -> tag = parser.valueAsString
+                    field == "name" -> name = parser.valueAsString
+                    field == "assets" && token == JsonToken.START_ARRAY -> {
+                        readAssets(parser, wantedAssets, assets)
+                        assetsRead = true
+                    }
+                    else -> parser.skipChildren()
+                }
+                if (tag != null && name != null && assetsRead) break
+            }
+        }
+        return Release(tag ?: throw IOException("release has no tag_name"), name ?: tag!!, assets, etag)
     }
 
-    @Throws(YoutubeDLException::class)
-    private fun getDownloadUrl(json: JsonNode): String {
-        val assets = json["assets"] as ArrayNode
-        var downloadUrl = ""
-        for (asset in assets) {
-            if (YoutubeDL.ytdlpBin == asset["name"].asText()) {
-                downloadUrl = asset["browser_download_url"].asText()
-                break
+    private fun readAssets(parser: JsonParser, wantedAssets: Set<String>, assets: MutableMap<String, String>) {
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            var assetName: String? = null
+            var url: String? = null
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                val field = parser.currentName()
+                parser.nextToken()
+                when (field) {
+                    "name" -> assetName = parser.valueAsString
+                    "browser_download_url" -> url = parser.valueAsString
+                    else -> parser.skipChildren()
+                }
             }
+            if (assetName in wantedAssets && url != null) assets[assetName!!] = url!!
         }
-        if (downloadUrl.isEmpty()) throw YoutubeDLException("unable to get download url")
-        return downloadUrl
     }
 
-    @Throws(IOException::class)
-    private fun download(appContext: Context, url: String): File {
-        val downloadUrl = URL(url)
-        val file = File.createTempFile(dlpBinaryName, null, appContext.cacheDir)
-        FileUtils.copyURLToFile(downloadUrl, file, 5000, 10000)
-        return file
+    @Throws(YoutubeDLException::class)
+    private fun getDownloadUrl(release: Release): String {
+        return release.assets[YoutubeDL.ytdlpBin] ?: throw YoutubeDLException("unable to get download url")
     }
 
-    private fun getYoutubeDLDir(appContext: Context): File {
-        val baseDir = File(appContext.noBackupFilesDir, YoutubeDL.baseName)
-        return File(baseDir, YoutubeDL.ytdlpDirName)
+    /* the expected sha-256 of yt-dlp from the release's SHA2-256SUMS, null for releases without one */
+    @Throws(IOException::class, YoutubeDLException::class)
+    private fun getChecksum(release: Release): String? {
+        val url = release.assets[checksumsAssetName] ?: return null
+        val connection = URL(url).openConnection()
+        connection.connectTimeout = 10000
+        connection.readTimeout = 15000
+        val lines = connection.getInputStream().use { IOUtils.readLines(it, StandardCharsets.UTF_8) }
+        for (line in lines) {
+            // <sha256> <name>, with a * before the name in binary mode
+            val parts = line.trim().split(Regex("\\s+"), 2)
+            if (parts.size == 2 && parts[1].removePrefix("*") == YoutubeDL.ytdlpBin) return parts[0]
+        }
+        throw YoutubeDLException("$checksumsAssetName has no checksum for ${YoutubeDL.ytdlpBin}")
     }
 
     fun version(appContext: Context?): String? {
@@ -112,4 +198,4 @@ internal object YoutubeDLUpdater {
     fun versionName(appContext: Context?): String? {
         return SharedPrefsHelper[appContext!!, dlpVersionNameKey]
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,19 @@
+package com.yausername.youtubedl_android.mapper
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties
+import com.fasterxml.jackson.annotation.JsonProperty
+
+/* an entry as --flat-playlist lists it, without extracting the video itself */
+@JsonIgnoreProperties(ignoreUnknown = true)
+class PlaylistEntry {
+    val id: String? = null
+    val url: String? = null
+    val title: String? = null
+    val duration = 0
+
+    @JsonProperty("playlist_index")
+    val playlistIndex: Int? = null
+
+    @JsonProperty("ie_key")
+    val ieKey: String? = null
+}
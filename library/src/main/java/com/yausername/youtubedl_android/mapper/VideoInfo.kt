@@ -48,6 +48,10 @@ class VideoInfo {
     @JsonProperty("webpage_url")
     val webpageUrl: String? = null
 
+    /* the url as it was passed to yt-dlp */
+    @JsonProperty("original_url")
+    val originalUrl: String? = null
+
     @JsonProperty("webpage_url_basename")
     val webpageUrlBasename: String? = null
     val resolution: String? = null
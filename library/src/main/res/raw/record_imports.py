@@ -0,0 +1,28 @@
+import atexit
+import os
+import runpy
+import sys
+import sysconfig
+
+# Runs yt-dlp and appends every stdlib file it imported to the profile, relative to the
+# stdlib directory. argv: profile, yt-dlp zipapp, yt-dlp arguments...
+profile, ytdlp = sys.argv[1], sys.argv[2]
+stdlib = os.path.realpath(sysconfig.get_paths()['stdlib'])
+
+
+def record():
+    imported = set()
+    for module in list(sys.modules.values()):
+        path = getattr(module, '__file__', None)
+        if not path:
+            continue
+        path = os.path.realpath(path)
+        if path.startswith(stdlib + os.sep):
+            imported.add(os.path.relpath(path, stdlib))
+    with open(profile, 'a') as f:
+        f.writelines(path + '\n' for path in sorted(imported))
+
+
+atexit.register(record)
+sys.argv = sys.argv[2:]
+runpy.run_path(ytdlp, run_name='__main__')
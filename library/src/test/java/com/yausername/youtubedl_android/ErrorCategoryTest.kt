@@ -0,0 +1,55 @@
+package com.yausername.youtubedl_android
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class ErrorCategoryTest {
+    @Test
+    fun classifiesTransientFailures() {
+        assertEquals(ErrorCategory.RATE_LIMITED, classify("ERROR: [youtube] abc: HTTP Error 429: Too Many Requests"))
+        assertEquals(ErrorCategory.SERVER_ERROR, classify("ERROR: unable to download video data: HTTP Error 503: Service Unavailable"))
+        assertEquals(ErrorCategory.FORBIDDEN, classify("ERROR: unable to download video data: HTTP Error 403: Forbidden"))
+        assertEquals(ErrorCategory.NETWORK, classify("ERROR: [generic] Unable to download webpage: <urlopen error [Errno 111] Connection refused>"))
+        assertEquals(ErrorCategory.NETWORK, classify("ERROR: [youtube] abc: Unable to download API page: [SSL: UNEXPECTED_EOF_WHILE_READING] EOF occurred in violation of protocol (_ssl.c:992)"))
+        assertEquals(ErrorCategory.FRAGMENT, classify("ERROR: fragment 3 not found, unable to continue"))
+    }
+
+    @Test
+    fun classifiesPermanentFailures() {
+        assertEquals(ErrorCategory.UNAVAILABLE, classify("ERROR: [youtube] abc: Video unavailable. This video has been removed by the uploader"))
+        assertEquals(ErrorCategory.UNAVAILABLE, classify("ERROR: [youtube] abc: Private video. Sign in if you've been granted access to this video"))
+        assertEquals(ErrorCategory.UNAVAILABLE, classify("ERROR: [vimeo] 123: This video is not available"))
+        assertEquals(ErrorCategory.FORMAT_UNAVAILABLE, classify("ERROR: [youtube] abc: Requested format is not available. Use --list-formats for a list of available formats"))
+        assertEquals(ErrorCategory.LOGIN_REQUIRED, classify("ERROR: [youtube] abc: Sign in to confirm your age"))
+        assertEquals(ErrorCategory.UNSUPPORTED_URL, classify("ERROR: Unsupported URL: https://example.com/"))
+        assertEquals(ErrorCategory.INVALID_OPTIONS, classify("Usage: yt-dlp [OPTIONS] URL [URL...]\n\nyt-dlp: error: no such option: --bogus"))
+        assertEquals(ErrorCategory.NO_SPACE, classify("ERROR: unable to write data: [Errno 28] No space left on device"))
+    }
+
+    @Test
+    fun certificateFailureIsNotRetried() {
+        val category = classify(
+            "ERROR: [generic] Unable to download webpage: <urlopen error [SSL: CERTIFICATE_VERIFY_FAILED] " +
+                    "certificate verify failed: unable to get local issuer certificate (_ssl.c:1006)>"
+        )
+        assertEquals(ErrorCategory.CERTIFICATE, category)
+        assertEquals(false, category.transient)
+    }
+
+    @Test
+    fun lastErrorLineWins() {
+        val stderr = "WARNING: [youtube] abc: HTTP Error 429: Too Many Requests, retrying\n" +
+                "ERROR: [youtube] abc: HTTP Error 403: Forbidden\n"
+        assertEquals(ErrorCategory.FORBIDDEN, classify(stderr))
+    }
+
+    @Test
+    fun unknownWithoutMatch() {
+        assertEquals(ErrorCategory.UNKNOWN, classify(""))
+        assertEquals(ErrorCategory.UNKNOWN, classify("ERROR: something new went wrong"))
+    }
+
+    private fun classify(stderr: String): ErrorCategory {
+        return ErrorCategory.classify(stderr)
+    }
+}
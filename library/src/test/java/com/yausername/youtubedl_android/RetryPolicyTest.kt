@@ -0,0 +1,45 @@
+package com.yausername.youtubedl_android
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class RetryPolicyTest {
+    @Test
+    fun delayGrowsExponentiallyUpToTheCap() {
+        val policy = RetryPolicy(maxAttempts = 10, initialDelayMillis = 1000, maxDelayMillis = 5000, jitter = 0.0)
+        assertEquals(listOf(1000L, 2000L, 4000L, 5000L, 5000L), (1..5).map { policy.delayMillis(it) })
+    }
+
+    @Test
+    fun jitterStaysWithinBounds() {
+        val policy = RetryPolicy(initialDelayMillis = 1000, jitter = 0.2)
+        repeat(1000) {
+            val delay = policy.delayMillis(1)
+            assertTrue("$delay", delay in 800..1200)
+        }
+    }
+
+    @Test
+    fun retriesTransientCategoriesUntilMaxAttempts() {
+        val policy = RetryPolicy(maxAttempts = 3)
+        assertTrue(policy.shouldRetry(ErrorCategory.RATE_LIMITED, 1))
+        assertTrue(policy.shouldRetry(ErrorCategory.NETWORK, 2))
+        assertFalse(policy.shouldRetry(ErrorCategory.NETWORK, 3))
+        assertFalse(policy.shouldRetry(ErrorCategory.UNAVAILABLE, 1))
+        assertFalse(policy.shouldRetry(ErrorCategory.CERTIFICATE, 1))
+    }
+
+    @Test
+    fun retryOnOverridesTheDefaults() {
+        val policy = RetryPolicy(retryOn = setOf(ErrorCategory.UNKNOWN))
+        assertTrue(policy.shouldRetry(ErrorCategory.UNKNOWN, 1))
+        assertFalse(policy.shouldRetry(ErrorCategory.NETWORK, 1))
+    }
+
+    @Test
+    fun noneNeverRetries() {
+        assertFalse(RetryPolicy.NONE.shouldRetry(ErrorCategory.RATE_LIMITED, 1))
+    }
+}